@@ -16,23 +16,24 @@
  */
 package org.apache.nifi;
 
+import org.apache.maven.RepositoryUtils;
 import org.apache.maven.archiver.MavenArchiveConfiguration;
 import org.apache.maven.archiver.MavenArchiver;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.DependencyResolutionRequiredException;
 import org.apache.maven.artifact.factory.ArtifactFactory;
-import org.apache.maven.artifact.handler.ArtifactHandler;
-import org.apache.maven.artifact.handler.manager.ArtifactHandlerManager;
 import org.apache.maven.artifact.installer.ArtifactInstaller;
 import org.apache.maven.artifact.metadata.ArtifactMetadataSource;
 import org.apache.maven.artifact.repository.ArtifactRepository;
 import org.apache.maven.artifact.repository.ArtifactRepositoryFactory;
 import org.apache.maven.artifact.resolver.ArtifactCollector;
-import org.apache.maven.artifact.resolver.ArtifactNotFoundException;
-import org.apache.maven.artifact.resolver.ArtifactResolutionException;
 import org.apache.maven.artifact.resolver.ArtifactResolver;
 import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.building.ModelBuilder;
+import org.apache.maven.model.io.xpp3.MavenXpp3Writer;
 import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecution;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.dependency.utils.DependencyStatusSets;
 import org.apache.maven.plugin.dependency.utils.DependencyUtil;
@@ -41,14 +42,18 @@ import org.apache.maven.plugin.dependency.utils.resolvers.ArtifactsResolver;
 import org.apache.maven.plugin.dependency.utils.resolvers.DefaultArtifactsResolver;
 import org.apache.maven.plugin.dependency.utils.translators.ArtifactTranslator;
 import org.apache.maven.plugin.dependency.utils.translators.ClassifierTypeTranslator;
+import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.maven.project.DefaultProjectBuildingRequest;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.project.MavenProjectHelper;
 import org.apache.maven.project.ProjectBuilder;
+import org.apache.maven.project.ProjectBuildingException;
+import org.apache.maven.project.ProjectBuildingRequest;
 import org.apache.maven.shared.artifact.filter.collection.ArtifactFilterException;
 import org.apache.maven.shared.artifact.filter.collection.ArtifactIdFilter;
 import org.apache.maven.shared.artifact.filter.collection.ArtifactsFilter;
@@ -59,50 +64,68 @@ import org.apache.maven.shared.artifact.filter.collection.ProjectTransitivityFil
 import org.apache.maven.shared.artifact.filter.collection.ScopeFilter;
 import org.apache.maven.shared.artifact.filter.collection.TypeFilter;
 import org.apache.maven.shared.dependency.graph.DependencyGraphBuilder;
+import org.apache.maven.shared.dependency.graph.DependencyGraphBuilderException;
 import org.apache.nifi.extension.definition.ExtensionDefinition;
 import org.apache.nifi.extension.definition.ExtensionType;
 import org.apache.nifi.extension.definition.ServiceAPIDefinition;
 import org.apache.nifi.extension.definition.extraction.ExtensionClassLoader;
 import org.apache.nifi.extension.definition.extraction.ExtensionClassLoaderFactory;
 import org.apache.nifi.extension.definition.extraction.ExtensionDefinitionFactory;
+import org.apache.nifi.extension.definition.extraction.ServiceRegistrationScanner;
 import org.apache.nifi.extension.definition.extraction.StandardServiceAPIDefinition;
+import org.apache.nifi.extension.documentation.AdditionalDetailsExtractor;
+import org.apache.nifi.extension.documentation.DocumentationCache;
+import org.apache.nifi.extension.documentation.DocumentationWriterBridge;
+import org.apache.nifi.extension.documentation.ExtensionCostReport;
+import org.apache.nifi.utils.BufferingLog;
+import org.apache.nifi.utils.InputFingerprint;
+import org.apache.nifi.utils.NarDependencyUtils;
+import org.apache.nifi.utils.NarDescriptor;
+import org.apache.nifi.utils.ParallelTasks;
+import org.apache.nifi.utils.StagingMode;
 import org.codehaus.plexus.archiver.ArchiverException;
 import org.codehaus.plexus.archiver.jar.JarArchiver;
 import org.codehaus.plexus.archiver.jar.ManifestException;
 import org.codehaus.plexus.archiver.manager.ArchiverManager;
-import org.codehaus.plexus.util.FileUtils;
 import org.codehaus.plexus.util.StringUtils;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.eclipse.aether.RepositorySystem;
 import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.ArtifactResolutionException;
+import org.eclipse.aether.resolution.ArtifactResult;
 
 import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.io.StringWriter;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
-import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Packages the current project as an Apache NiFi Archive (NAR).
@@ -116,12 +139,15 @@ import java.util.stream.Collectors;
 public class NarMojo extends AbstractMojo {
     private static final String CONTROLLER_SERVICE_CLASS_NAME = "org.apache.nifi.controller.ControllerService";
     private static final String DOCUMENTATION_WRITER_CLASS_NAME = "org.apache.nifi.documentation.xml.XmlDocumentationWriter";
+    private static final String EXTENSION_COSTS_FILENAME = "nar-extension-costs.json";
 
     private static final String[] DEFAULT_EXCLUDES = new String[]{"**/package.html"};
     private static final String[] DEFAULT_INCLUDES = new String[]{"**/**"};
 
     private static final String BUILD_TIMESTAMP_FORMAT = "yyyy-MM-dd'T'HH:mm:ss'Z'";
 
+    private static final String BUNDLED_DEPENDENCIES_PATH = "META-INF/bundled-dependencies/";
+
     /**
      * POM
      *
@@ -129,6 +155,12 @@ public class NarMojo extends AbstractMojo {
     @Parameter(defaultValue = "${project}", readonly = true, required = true)
     protected MavenProject project;
 
+    /**
+     * The execution of this goal, whose configuration shows which archive settings were configured explicitly.
+     */
+    @Parameter(defaultValue = "${mojoExecution}", readonly = true, required = true)
+    protected MojoExecution mojoExecution;
+
     @Parameter(defaultValue = "${session}", readonly = true, required = true)
     protected MavenSession session;
 
@@ -193,6 +225,27 @@ public class NarMojo extends AbstractMojo {
     @Parameter(property = "nar.forceCreation", defaultValue = "false")
     protected boolean forceCreation;
 
+    /**
+     * Whether jars and other zip archives added to the NAR, such as the bundled
+     * dependencies, should be stored as-is rather than recompressed. These
+     * entries are already compressed, so storing them saves time both when the
+     * NAR is built and when NiFi unpacks it. An explicitly configured
+     * <code>archive/recompressAddedZips</code> always takes precedence.
+     *
+     */
+    @Parameter(property = "nar.storeAddedZips", defaultValue = "true")
+    protected boolean storeAddedZips;
+
+    /**
+     * Whether the entries of the NAR should be compressed. Entries are
+     * compressed in parallel by the archiver; disabling compression entirely
+     * trades a larger NAR for faster packaging, which can be useful for local
+     * development builds of very large NARs.
+     *
+     */
+    @Parameter(property = "nar.compress", defaultValue = "true")
+    protected boolean compress;
+
     /**
      * Classifier to add to the artifact generated. If given, the artifact will
      * be an attachment instead.
@@ -331,6 +384,24 @@ public class NarMojo extends AbstractMojo {
     @Parameter(property = "overWriteIfNewer", required = false, defaultValue = "true")
     protected boolean overWriteIfNewer;
 
+    /**
+     * Number of threads used to copy the bundled dependencies into the NAR. A value less than 1 uses one thread per
+     * available processor.
+     *
+     */
+    @Parameter(property = "nar.copyThreads", required = false, defaultValue = "0")
+    protected int copyThreads;
+
+    /**
+     * How the bundled dependencies are placed into the NAR staging directory. Supported values are <code>copy</code>,
+     * <code>hardlink</code>, <code>reflink</code>, <code>symlink-then-archive</code> and <code>direct</code>. The linking
+     * modes fall back to copying when the file system is unable to create the requested kind of link. The <code>direct</code>
+     * mode skips the staging directory entirely and adds each dependency to the NAR straight from the local repository.
+     *
+     */
+    @Parameter(property = "nar.stagingMode", required = false, defaultValue = "copy")
+    protected String stagingMode;
+
     @Parameter(property = "projectBuildDirectory", required = false, defaultValue = "${project.build.directory}")
     protected File projectBuildDirectory;
 
@@ -399,11 +470,16 @@ public class NarMojo extends AbstractMojo {
     private DependencyGraphBuilder dependencyGraphBuilder;
 
     /**
-     * *
-     * The {@link ArtifactHandlerManager} into which any extension {@link ArtifactHandler} instances should have been injected when the extensions were loaded.
+     * The {@link RepositorySystem} used for resolving artifacts through the {@link RepositorySystemSession}.
      */
     @Component
-    private ArtifactHandlerManager artifactHandlerManager;
+    private RepositorySystem repositorySystem;
+
+    /**
+     * The {@link ModelBuilder} used to determine the POMs that the cached dependencies of parent NARs are derived from.
+     */
+    @Component
+    private ModelBuilder modelBuilder;
 
 
     /**
@@ -479,6 +555,28 @@ public class NarMojo extends AbstractMojo {
     @Parameter(property = "enforceDocGeneration", defaultValue = "false", required = false)
     protected boolean enforceDocGeneration;
 
+    /**
+     * Number of threads used for generating the documentation of the extensions in the NAR. A value less than 1 uses one thread
+     * per available processor.
+     */
+    @Parameter(property = "nar.documentationThreads", defaultValue = "0", required = false)
+    protected int documentationThreads;
+
+    /**
+     * Whether the extensions in the NAR should be instantiated and documented by <code>documentationThreads</code> threads at once rather
+     * than one at a time. The extension manifest is the same either way, but the extensions' static initializers then run concurrently,
+     * which not every extension may be prepared for.
+     */
+    @Parameter(property = "nar.renderDocumentationInParallel", defaultValue = "false", required = false)
+    protected boolean renderDocumentationInParallel;
+
+    /**
+     * Number of threads used for resolving the artifacts of the ClassLoaders that the extensions are documented with. A value less
+     * than 1 uses one thread per available processor.
+     */
+    @Parameter(property = "nar.resolutionThreads", defaultValue = "0", required = false)
+    protected int resolutionThreads;
+
     /**
      * The {@link RepositorySystemSession} used for obtaining the local and remote artifact repositories.
      */
@@ -503,10 +601,218 @@ public class NarMojo extends AbstractMojo {
     private String outputTimestamp;
 
 
+    /**
+     * Whether the NAR should be left as-is when none of its inputs have changed since it was last built. The inputs are the
+     * project's dependencies and their contents, the contents of the classes directory, the project's POM, the parameters of
+     * this goal and the version of this plugin. Setting <code>forceCreation</code> always rebuilds the NAR.
+     */
+    @Parameter(property = "nar.skipIfUpToDate", defaultValue = "false")
+    protected boolean skipIfUpToDate;
+
+    @Parameter(defaultValue = "${plugin.version}", readonly = true)
+    private String pluginVersion;
+
+    /**
+     * Whether the generated documentation for the NiFi extensions in the NAR should be cached in <code>cacheDirectory</code>
+     * and reused by later builds whose extensions, parent NAR and NiFi API version are unchanged. Reusing cached documentation
+     * avoids creating the extension ClassLoaders and instantiating every extension.
+     */
+    @Parameter(property = "nar.cacheDocumentation", defaultValue = "false")
+    protected boolean cacheDocumentation;
+
+    /**
+     * The directory in which cached build information is kept between builds.
+     */
+    @Parameter(property = "nar.cacheDirectory", defaultValue = "${user.home}/.m2/nar-cache")
+    protected File cacheDirectory;
+
+    /**
+     * Whether the dependencies of parent NARs should be cached in <code>cacheDirectory</code> and reused by later builds, which avoids
+     * building the POM inheritance chain of each parent NAR again. Cached dependencies of released NARs whose dependencies are all released
+     * are reused indefinitely. Otherwise they are reused until the NAR's POM, the POM of any snapshot it depends on, or any parent POM
+     * or imported BOM of these changes.
+     */
+    @Parameter(property = "nar.cacheParentNars", defaultValue = "false")
+    protected boolean cacheParentNars;
+
+    /**
+     * Whether the ClassLoaders used to document the NAR's extensions should index the packages in their jars when they are created, so
+     * that classes and resources are looked up only in the jars that contain them rather than by searching every jar in turn. This pays
+     * off for NARs with many dependencies.
+     */
+    @Parameter(property = "nar.indexClassLoaders", defaultValue = "false")
+    protected boolean indexClassLoaders;
+
+    /**
+     * Whether the NAR's extensions and the service APIs they provide should be discovered by reading their class files rather than by
+     * loading their classes. Reading the class files avoids loading and linking the extensions' dependencies, so discovery is faster and
+     * does not fail on linkage errors in optional dependencies.
+     */
+    @Parameter(property = "nar.readExtensionClassFiles", defaultValue = "false")
+    protected boolean readExtensionClassFiles;
+
+    /**
+     * Whether a descriptor of the NAR's dependency tree should be attached to the build with the <code>nar-descriptor</code> classifier.
+     * Builds of NARs that depend on this NAR and enable <code>readDescriptors</code> read the descriptor to determine the artifacts of
+     * this NAR's ClassLoader, instead of resolving this NAR's dependency graph again. The descriptor is deployed along with the NAR, so
+     * it is only attached when enabled. No descriptor is attached when a <code>classifier</code> is set.
+     */
+    @Parameter(property = "nar.attachDescriptor", defaultValue = "false")
+    protected boolean attachDescriptor;
+
+    /**
+     * Whether the descriptors attached by <code>attachDescriptor</code> should be used to determine the artifacts of parent NARs when
+     * generating documentation. Looking up a descriptor may require a request to the remote repositories for each parent NAR, so
+     * descriptors are only read when enabled; otherwise the dependency graph of each parent NAR is resolved.
+     */
+    @Parameter(property = "nar.readDescriptors", defaultValue = "false")
+    protected boolean readDescriptors;
+
+    /**
+     * Whether the cost of instantiating each of the NAR's extensions should be measured while their documentation is generated and
+     * written to <code>nar-extension-costs.json</code> in the build directory. For each extension, the time taken to load its class, to
+     * initialize the class, to construct the extension and to get its property descriptors is recorded, together with the number of
+     * classes that the NAR ClassLoaders defined for it. Documentation is generated rather than reused from the cache while profiling,
+     * and is rendered one extension at a time even if <code>renderDocumentationInParallel</code> is set. Unless
+     * <code>readExtensionClassFiles</code> is set, extension classes are already loaded when the extensions are discovered, so the time
+     * taken to load them is not included.
+     */
+    @Parameter(property = "nar.profileExtensions", defaultValue = "false")
+    protected boolean profileExtensions;
+
+    /**
+     * The maximum time, in milliseconds, that instantiating any one of the NAR's extensions may take, as measured by
+     * <code>profileExtensions</code>. The build fails if an extension takes longer. A value greater than 0 enables
+     * <code>profileExtensions</code>; a value of 0 does not check the times.
+     */
+    @Parameter(property = "nar.extensionCostThresholdMillis", defaultValue = "0")
+    protected long extensionCostThresholdMillis;
+
+    private volatile ExtensionCostReport extensionCostReport;
+
+    // inherited by the worker threads that a task starts, since each call to ParallelTasks creates its threads on the calling thread
+    private final InheritableThreadLocal<Log> taskLog = new InheritableThreadLocal<>();
+
+
     @Override
     public void execute() throws MojoExecutionException {
-        copyDependencies();
+        final File narFile = getNarFile(projectBuildDirectory, finalName, classifier);
+        final File fingerprintFile = new File(projectBuildDirectory, narFile.getName() + ".inputs");
+
+        String fingerprint = null;
+        if (skipIfUpToDate && !forceCreation) {
+            fingerprint = getInputFingerprint();
+
+            final boolean descriptorExists = !isDescriptorAttached() || getNarDescriptorFile().exists();
+            if (narFile.exists() && descriptorExists && fingerprint.equals(readInputFingerprint(fingerprintFile))) {
+                getLog().info("Skipping NAR creation because " + narFile.getName() + " is up to date");
+                attachNar(narFile);
+                return;
+            }
+        }
+
+        // remove the previous fingerprint so that a failed build is never considered up to date
+        deleteInputFingerprint(fingerprintFile);
+
+        extensionCostReport = isProfilingExtensions() ? new ExtensionCostReport() : null;
+
+        // the documentation ClassLoaders are built from the repository rather than from the staged dependencies, so both can run at once.
+        // Each of them logs to a buffer of its own, which is written once both are complete so that their output is not interleaved.
+        final BufferingLog copyLog = new BufferingLog(getLog());
+        final BufferingLog documentationLog = new BufferingLog(getLog());
+        final List<Callable<Void>> preparationTasks = new ArrayList<>();
+        preparationTasks.add(withTaskLog(copyLog, () -> {
+            copyDependencies();
+            return null;
+        }));
+        preparationTasks.add(withTaskLog(documentationLog, () -> {
+            generateDocumentationIfPossible();
+            return null;
+        }));
+
+        try {
+            ParallelTasks.invokeAll(preparationTasks, preparationTasks.size(), "Prepare NAR");
+        } catch (final MojoExecutionException | RuntimeException e) {
+            throw e;
+        } catch (final Exception e) {
+            throw new MojoExecutionException("Failed to prepare NAR contents", e);
+        } finally {
+            copyLog.flush();
+            documentationLog.flush();
+        }
+
+        if (extensionCostReport != null) {
+            writeExtensionCostReport(extensionCostReport);
+        }
+
+        if (isDescriptorAttached()) {
+            writeNarDescriptor();
+        }
+
+        makeNar();
+
+        if (fingerprint != null) {
+            writeInputFingerprint(fingerprintFile, fingerprint);
+        }
+    }
+
+    /**
+     * Returns the log of the task that the current thread is running on behalf of, if any, so that everything the task logs, including
+     * from the worker threads that it starts, is written to that task's log.
+     */
+    @Override
+    public Log getLog() {
+        final Log log = taskLog.get();
+        return log == null ? super.getLog() : log;
+    }
+
+    private <T> Callable<T> withTaskLog(final Log log, final Callable<T> task) {
+        return () -> {
+            taskLog.set(log);
+            try {
+                return task.call();
+            } finally {
+                taskLog.remove();
+            }
+        };
+    }
+
+    private boolean isProfilingExtensions() {
+        return profileExtensions || extensionCostThresholdMillis > 0;
+    }
 
+    /**
+     * Writes the cost of instantiating each extension to the build directory, and fails the build if any extension exceeds the threshold.
+     */
+    private void writeExtensionCostReport(final ExtensionCostReport report) throws MojoExecutionException {
+        final File reportFile = new File(projectBuildDirectory, EXTENSION_COSTS_FILENAME);
+        try {
+            createDirectory(projectBuildDirectory);
+            report.write(reportFile, project.getGroupId() + ":" + project.getArtifactId() + ":" + project.getVersion(), extensionCostThresholdMillis);
+        } catch (final IOException e) {
+            throw new MojoExecutionException("Could not write extension costs to " + reportFile, e);
+        }
+        getLog().info("Wrote the cost of instantiating " + report.getExtensionCosts().size() + " extensions to " + reportFile);
+
+        if (extensionCostThresholdMillis <= 0) {
+            return;
+        }
+
+        final List<ExtensionCostReport.ExtensionCost> exceeding = report.getExtensionCostsExceeding(extensionCostThresholdMillis);
+        if (exceeding.isEmpty()) {
+            return;
+        }
+
+        final StringBuilder sb = new StringBuilder("Instantiating the following extensions took longer than " + extensionCostThresholdMillis + " milliseconds:");
+        for (final ExtensionCostReport.ExtensionCost cost : exceeding) {
+            sb.append(System.lineSeparator()).append("  ").append(cost.getExtensionName()).append(": ")
+                .append(TimeUnit.NANOSECONDS.toMillis(cost.getTotalNanos())).append(" milliseconds");
+        }
+        sb.append(System.lineSeparator()).append("See ").append(reportFile).append(" for details");
+        throw new MojoExecutionException(sb.toString());
+    }
+
+    private void generateDocumentationIfPossible() throws MojoExecutionException {
         try {
             generateDocumentation();
         } catch (final Throwable t) { // Catch Throwable in case a linkage error such as NoClassDefFoundError occurs
@@ -517,8 +823,129 @@ public class NarMojo extends AbstractMojo {
                 getLog().warn("Could not generate extensions' documentation", t);
             }
         }
+    }
 
-        makeNar();
+    private String getInputFingerprint() throws MojoExecutionException {
+        final InputFingerprint fingerprint = new InputFingerprint()
+            .add("pluginVersion", pluginVersion)
+            .add("finalName", finalName)
+            .add("classifier", classifier)
+            .add("includes", Arrays.toString(getIncludes()))
+            .add("excludes", Arrays.toString(getExcludes()))
+            .add("useDefaultManifestFile", useDefaultManifestFile)
+            .add("storeAddedZips", storeAddedZips)
+            .add("compress", compress)
+            .add("includeTypes", includeTypes)
+            .add("excludeTypes", excludeTypes)
+            .add("includeScope", includeScope)
+            .add("excludeScope", excludeScope)
+            .add("includeClassifiers", includeClassifiers)
+            .add("excludeClassifiers", excludeClassifiers)
+            .add("copyDepClassifier", copyDepClassifier)
+            .add("type", type)
+            .add("excludeArtifactIds", excludeArtifactIds)
+            .add("includeArtifactIds", includeArtifactIds)
+            .add("excludeGroupIds", excludeGroupIds)
+            .add("includeGroupIds", includeGroupIds)
+            .add("stagingMode", stagingMode)
+            .add("narGroup", narGroup)
+            .add("narId", narId)
+            .add("narVersion", narVersion)
+            .add("narDependencyGroup", narDependencyGroup)
+            .add("narDependencyId", narDependencyId)
+            .add("narDependencyVersion", narDependencyVersion)
+            .add("buildTag", buildTag)
+            .add("buildBranch", buildBranch)
+            .add("buildRevision", buildRevision)
+            .add("cloneDuringInstanceClassLoading", cloneDuringInstanceClassLoading)
+            .add("enforceDocGeneration", enforceDocGeneration)
+            .add("attachDescriptor", attachDescriptor)
+            .add("readDescriptors", readDescriptors)
+            .add("profileExtensions", profileExtensions)
+            .add("extensionCostThresholdMillis", extensionCostThresholdMillis)
+            .add("outputTimestamp", outputTimestamp)
+            .add("failOnMissingClassifierArtifact", failOnMissingClassifierArtifact)
+            .add("markersDirectory", markersDirectory)
+            .add("overWriteReleases", overWriteReleases)
+            .add("overWriteSnapshots", overWriteSnapshots)
+            .add("overWriteIfNewer", overWriteIfNewer)
+            .add("copyThreads", copyThreads)
+            .add("projectBuildDirectory", projectBuildDirectory)
+            .add("remoteRepos", remoteRepos)
+            .add("silent", silent)
+            .add("outputAbsoluteArtifactFilename", outputAbsoluteArtifactFilename)
+            .add("documentationThreads", documentationThreads)
+            .add("renderDocumentationInParallel", renderDocumentationInParallel)
+            .add("resolutionThreads", resolutionThreads)
+            .add("cacheDocumentation", cacheDocumentation)
+            .add("cacheDirectory", cacheDirectory)
+            .add("cacheParentNars", cacheParentNars)
+            .add("indexClassLoaders", indexClassLoaders)
+            .add("readExtensionClassFiles", readExtensionClassFiles)
+            .add("archive.manifestFile", archive.getManifestFile())
+            .add("archive.manifestEntries", new TreeMap<>(archive.getManifestEntries()))
+            .add("archive.compress", archive.isCompress())
+            .add("archive.recompressAddedZips", archive.isRecompressAddedZips())
+            .add("archive.addMavenDescriptor", archive.isAddMavenDescriptor())
+            .add("archive.pomPropertiesFile", archive.getPomPropertiesFile());
+
+        try {
+            // the effective model covers the parent POMs, imported BOMs and the complete configuration of the archive
+            final StringWriter effectiveModel = new StringWriter();
+            new MavenXpp3Writer().write(effectiveModel, project.getModel());
+            fingerprint.add("model", effectiveModel);
+
+            fingerprint.addFile("pom", project.getFile());
+            if (useDefaultManifestFile) {
+                fingerprint.addFile("defaultManifestFile", defaultManifestFile);
+            }
+
+            final List<Artifact> artifacts = new ArrayList<>(project.getArtifacts());
+            Collections.sort(artifacts);
+            for (final Artifact artifact : artifacts) {
+                fingerprint.add("dependency", artifact.getId() + ":" + artifact.getScope());
+                fingerprint.addFile(artifact.getId(), artifact.getFile());
+            }
+
+            // the bundled dependencies are an output of this goal, not an input
+            fingerprint.addDirectory("classes", getClassesDirectory(), BUNDLED_DEPENDENCIES_PATH);
+            if (archive.getManifestFile() != null) {
+                fingerprint.addFile("archive.manifestFile", archive.getManifestFile());
+            }
+        } catch (final IOException e) {
+            throw new MojoExecutionException("Failed to determine whether the NAR is up to date", e);
+        }
+
+        return fingerprint.toHex();
+    }
+
+    private String readInputFingerprint(final File fingerprintFile) {
+        if (!fingerprintFile.exists()) {
+            return null;
+        }
+
+        try {
+            return new String(Files.readAllBytes(fingerprintFile.toPath()), StandardCharsets.UTF_8).trim();
+        } catch (final IOException e) {
+            getLog().debug("Unable to read NAR input fingerprint from " + fingerprintFile, e);
+            return null;
+        }
+    }
+
+    private void deleteInputFingerprint(final File fingerprintFile) throws MojoExecutionException {
+        try {
+            Files.deleteIfExists(fingerprintFile.toPath());
+        } catch (final IOException e) {
+            throw new MojoExecutionException("Could not delete NAR input fingerprint " + fingerprintFile, e);
+        }
+    }
+
+    private void writeInputFingerprint(final File fingerprintFile, final String fingerprint) {
+        try {
+            Files.write(fingerprintFile.toPath(), fingerprint.getBytes(StandardCharsets.UTF_8));
+        } catch (final IOException e) {
+            getLog().warn("Unable to write NAR input fingerprint to " + fingerprintFile + "; the NAR will be rebuilt by the next build", e);
+        }
     }
 
     private File getExtensionsDocumentationFile() {
@@ -527,6 +954,101 @@ public class NarMojo extends AbstractMojo {
     }
 
     private void generateDocumentation() throws MojoExecutionException {
+        boolean hasExtensionRegistrations;
+        try {
+            hasExtensionRegistrations = hasExtensionRegistrations();
+        } catch (final IOException e) {
+            getLog().debug("Unable to determine whether the NAR registers any NiFi extensions", e);
+            hasExtensionRegistrations = true;
+        }
+
+        // library and service API NARs have no extensions to document, so their manifest can be written without any ClassLoaders
+        if (!hasExtensionRegistrations) {
+            final String nifiApiVersion = determineNiFiApiVersion();
+            if (nifiApiVersion != null) {
+                getLog().info("No NiFi extensions are registered in the NAR, so an extension manifest without extensions will be written");
+                writeEmptyExtensionsDocumentation(nifiApiVersion);
+                return;
+            }
+        }
+
+        final File docsDirectory = getExtensionsDocumentationFile().getParentFile();
+        final DocumentationCache documentationCache = cacheDocumentation ? new DocumentationCache(new File(cacheDirectory, "documentation")) : null;
+
+        String cacheKey = null;
+        // cached documentation has no extension costs, so it is not reused while the extensions are being profiled
+        if (documentationCache != null && extensionCostReport == null) {
+            try {
+                cacheKey = getDocumentationCacheKey();
+                if (documentationCache.restore(cacheKey, docsDirectory)) {
+                    getLog().info("Reusing cached documentation for NiFi extensions in the NAR");
+                    return;
+                }
+            } catch (final IOException e) {
+                getLog().warn("Unable to read cached documentation for NiFi extensions; documentation will be generated", e);
+                cacheKey = null;
+            }
+        }
+
+        final boolean generated = writeExtensionsDocumentation();
+
+        if (generated && cacheKey != null) {
+            try {
+                documentationCache.store(cacheKey, docsDirectory);
+            } catch (final IOException e) {
+                getLog().warn("Unable to cache documentation for NiFi extensions", e);
+            }
+        }
+    }
+
+    /**
+     * Determines the key under which the documentation for this NAR is cached, without creating any ClassLoaders. The key covers the
+     * classes directory, the coordinates and scope of every dependency, the contents of every snapshot and of every dependency that comes
+     * from the reactor rather than the local repository, the parent NAR, the NiFi API version as the ClassLoader would provide it and the
+     * information written into the extension manifest. Released artifacts never change, so their coordinates identify their contents.
+     */
+    private String getDocumentationCacheKey() throws IOException, MojoExecutionException {
+        final NarDependency narDependency = getNarDependency();
+        final InputFingerprint fingerprint = new InputFingerprint()
+            .add("pluginVersion", pluginVersion)
+            .add("narGroup", narGroup)
+            .add("narId", narId)
+            .add("narVersion", narVersion)
+            .add("narDependencyGroup", narDependencyGroup)
+            .add("narDependencyId", narDependencyId)
+            .add("narDependencyVersion", narDependencyVersion)
+            .add("buildTag", buildTag)
+            .add("buildBranch", buildBranch)
+            .add("buildRevision", buildRevision)
+            .add("readExtensionClassFiles", readExtensionClassFiles)
+            .add("parentNar", narDependency)
+            .add("nifiApiVersion", determineNiFiApiVersion());
+
+        fingerprint.addDirectory("classes", getClassesDirectory(), BUNDLED_DEPENDENCIES_PATH);
+
+        final File localRepositoryDirectory = local == null ? null : new File(local.getBasedir()).getAbsoluteFile();
+        final List<Artifact> artifacts = new ArrayList<>(project.getArtifacts());
+        Collections.sort(artifacts);
+        for (final Artifact artifact : artifacts) {
+            fingerprint.add("dependency", artifact.getId() + ":" + artifact.getScope());
+
+            final File artifactFile = artifact.getFile();
+            if (artifactFile == null) {
+                continue;
+            }
+
+            final boolean fromReactor = localRepositoryDirectory == null || !artifactFile.getAbsoluteFile().toPath().startsWith(localRepositoryDirectory.toPath());
+            if (artifactFile.isDirectory()) {
+                fingerprint.addDirectory(artifact.getId(), artifactFile, null);
+            } else if (artifact.isSnapshot() || fromReactor) {
+                fingerprint.addFile(artifact.getId(), artifactFile);
+            }
+        }
+
+        return fingerprint.toHex();
+    }
+
+    private boolean writeExtensionsDocumentation() throws MojoExecutionException {
         getLog().info("Generating documentation for NiFi extensions in the NAR...");
 
         // Create the ClassLoader for the NAR
@@ -545,11 +1067,18 @@ public class NarMojo extends AbstractMojo {
                     getLog().warn("Unable to create a ClassLoader for documenting extensions. If this NAR contains any NiFi Extensions, those extensions will not be documented. " +
                             "Enable mvn DEBUG output for more information (mvn -X).");
                 }
-                return;
+                return false;
             }
         }
 
+        try {
+            return writeExtensionsDocumentation(extensionClassLoader);
+        } finally {
+            classLoaderFactory.release(extensionClassLoader);
+        }
+    }
 
+    private boolean writeExtensionsDocumentation(final ExtensionClassLoader extensionClassLoader) throws MojoExecutionException {
         final File docsFile = getExtensionsDocumentationFile();
         createDirectory(docsFile.getParentFile());
 
@@ -558,43 +1087,12 @@ public class NarMojo extends AbstractMojo {
 
         try (final OutputStream out = new FileOutputStream(docsFile)) {
 
-            final XMLStreamWriter xmlWriter = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+            // the factory is found before the context ClassLoader is switched, so that a StAX implementation bundled in the NAR is never used
+            final XMLOutputFactory xmlOutputFactory = XMLOutputFactory.newInstance();
+            final XMLStreamWriter xmlWriter = xmlOutputFactory.createXMLStreamWriter(out, "UTF-8");
             try {
-                xmlWriter.writeStartElement("extensionManifest");
-
-                // Write current NAR information
-                writeXmlTag(xmlWriter, "groupId", narGroup);
-                writeXmlTag(xmlWriter, "artifactId", narId);
-                writeXmlTag(xmlWriter, "version", narVersion);
-
-                // Write parent NAR information
-                final NarDependency narDependency = getNarDependency();
-                if (narDependency != null) {
-                    xmlWriter.writeStartElement("parentNar");
-                    writeXmlTag(xmlWriter, "groupId", notEmpty(this.narDependencyGroup) ? this.narDependencyGroup : narDependency.getGroupId());
-                    writeXmlTag(xmlWriter, "artifactId", notEmpty(this.narDependencyId) ? this.narDependencyId : narDependency.getArtifactId());
-                    writeXmlTag(xmlWriter, "version", notEmpty(this.narDependencyVersion) ? this.narDependencyVersion : narDependency.getVersion());
-                    xmlWriter.writeEndElement();
-                }
-
-                // Write system API version
                 final String nifiApiVersion = extensionClassLoader.getNiFiApiVersion();
-                xmlWriter.writeStartElement("systemApiVersion");
-                xmlWriter.writeCharacters(nifiApiVersion);
-                xmlWriter.writeEndElement();
-
-                // Write build info
-                xmlWriter.writeStartElement("buildInfo");
-                if (notEmpty(buildTag)) {
-                    writeXmlTag(xmlWriter, "tag", buildTag);
-                }
-                if (notEmpty(buildBranch)) {
-                    writeXmlTag(xmlWriter, "branch", buildBranch);
-                }
-                if (notEmpty(buildRevision)) {
-                    writeXmlTag(xmlWriter, "revision", buildRevision);
-                }
-                xmlWriter.writeEndElement();
+                writeManifestHeader(xmlWriter, nifiApiVersion);
 
                 // Write extensions
                 xmlWriter.writeStartElement("extensions");
@@ -604,25 +1102,42 @@ public class NarMojo extends AbstractMojo {
                     docWriterClass = Class.forName(DOCUMENTATION_WRITER_CLASS_NAME, false, extensionClassLoader);
                 } catch (ClassNotFoundException e) {
                     getLog().warn("Cannot locate class " + DOCUMENTATION_WRITER_CLASS_NAME + ", so no documentation will be generated for the extensions in this NAR");
-                    return;
+                    return false;
                 }
 
+                // the documentation writer's methods are looked up once for the ClassLoader rather than once per extension
+                final DocumentationWriterBridge docWriterBridge = new DocumentationWriterBridge(docWriterClass, extensionClassLoader);
+
                 getLog().debug("Creating Extension Definition Factory for NiFi API version " + nifiApiVersion);
 
-                final ExtensionDefinitionFactory extensionDefinitionFactory = new ExtensionDefinitionFactory(extensionClassLoader);
+                final ExtensionDefinitionFactory extensionDefinitionFactory = new ExtensionDefinitionFactory(extensionClassLoader, readExtensionClassFiles);
 
                 final ClassLoader currentContextClassLoader = Thread.currentThread().getContextClassLoader();
                 try {
                     Thread.currentThread().setContextClassLoader(extensionClassLoader);
 
-                    final Set<ExtensionDefinition> processorDefinitions = extensionDefinitionFactory.discoverExtensions(ExtensionType.PROCESSOR);
-                    writeDocumentation(processorDefinitions, extensionClassLoader, docWriterClass, xmlWriter, additionalDetailsDir);
+                    // a single scan of the NAR's own jars finds the extensions of every type
+                    final Map<ExtensionType, Set<ExtensionDefinition>> extensionDefinitions = extensionDefinitionFactory.discoverExtensions();
+
+                    final Set<ExtensionDefinition> processorDefinitions = extensionDefinitions.get(ExtensionType.PROCESSOR);
+                    writeDocumentation(processorDefinitions, extensionClassLoader, docWriterBridge, xmlOutputFactory, xmlWriter, out);
 
-                    final Set<ExtensionDefinition> controllerServiceDefinitions = extensionDefinitionFactory.discoverExtensions(ExtensionType.CONTROLLER_SERVICE);
-                    writeDocumentation(controllerServiceDefinitions, extensionClassLoader, docWriterClass, xmlWriter, additionalDetailsDir);
+                    final Set<ExtensionDefinition> controllerServiceDefinitions = extensionDefinitions.get(ExtensionType.CONTROLLER_SERVICE);
+                    writeDocumentation(controllerServiceDefinitions, extensionClassLoader, docWriterBridge, xmlOutputFactory, xmlWriter, out);
 
-                    final Set<ExtensionDefinition> reportingTaskDefinitions = extensionDefinitionFactory.discoverExtensions(ExtensionType.REPORTING_TASK);
-                    writeDocumentation(reportingTaskDefinitions, extensionClassLoader, docWriterClass, xmlWriter, additionalDetailsDir);
+                    final Set<ExtensionDefinition> reportingTaskDefinitions = extensionDefinitions.get(ExtensionType.REPORTING_TASK);
+                    writeDocumentation(reportingTaskDefinitions, extensionClassLoader, docWriterBridge, xmlOutputFactory, xmlWriter, out);
+
+                    final Set<String> extensionNames = new HashSet<>();
+                    processorDefinitions.forEach(definition -> extensionNames.add(definition.getExtensionName()));
+                    controllerServiceDefinitions.forEach(definition -> extensionNames.add(definition.getExtensionName()));
+                    reportingTaskDefinitions.forEach(definition -> extensionNames.add(definition.getExtensionName()));
+
+                    try {
+                        writeAdditionalDetails(extensionClassLoader, extensionNames, additionalDetailsDir);
+                    } catch (final Exception e) {
+                        throw new IOException("Unable to extract Additional Details", e);
+                    }
                 } finally {
                     if (currentContextClassLoader != null) {
                         Thread.currentThread().setContextClassLoader(currentContextClassLoader);
@@ -637,6 +1152,109 @@ public class NarMojo extends AbstractMojo {
         } catch (final Exception ioe) {
             throw new MojoExecutionException("Failed to create Extension Documentation", ioe);
         }
+
+        return true;
+    }
+
+    /**
+     * Writes the information about the NAR itself that precedes the extensions in the extension manifest.
+     */
+    private void writeManifestHeader(final XMLStreamWriter xmlWriter, final String nifiApiVersion) throws XMLStreamException, MojoExecutionException {
+        xmlWriter.writeStartElement("extensionManifest");
+
+        // Write current NAR information
+        writeXmlTag(xmlWriter, "groupId", narGroup);
+        writeXmlTag(xmlWriter, "artifactId", narId);
+        writeXmlTag(xmlWriter, "version", narVersion);
+
+        // Write parent NAR information
+        final NarDependency narDependency = getNarDependency();
+        if (narDependency != null) {
+            xmlWriter.writeStartElement("parentNar");
+            writeXmlTag(xmlWriter, "groupId", notEmpty(this.narDependencyGroup) ? this.narDependencyGroup : narDependency.getGroupId());
+            writeXmlTag(xmlWriter, "artifactId", notEmpty(this.narDependencyId) ? this.narDependencyId : narDependency.getArtifactId());
+            writeXmlTag(xmlWriter, "version", notEmpty(this.narDependencyVersion) ? this.narDependencyVersion : narDependency.getVersion());
+            xmlWriter.writeEndElement();
+        }
+
+        // Write system API version
+        xmlWriter.writeStartElement("systemApiVersion");
+        xmlWriter.writeCharacters(nifiApiVersion);
+        xmlWriter.writeEndElement();
+
+        // Write build info
+        xmlWriter.writeStartElement("buildInfo");
+        if (notEmpty(buildTag)) {
+            writeXmlTag(xmlWriter, "tag", buildTag);
+        }
+        if (notEmpty(buildBranch)) {
+            writeXmlTag(xmlWriter, "branch", buildBranch);
+        }
+        if (notEmpty(buildRevision)) {
+            writeXmlTag(xmlWriter, "revision", buildRevision);
+        }
+        xmlWriter.writeEndElement();
+    }
+
+    /**
+     * Writes the extension manifest of a NAR that does not contain any extensions, which only requires the information about the NAR itself,
+     * so that no ClassLoaders have to be created.
+     */
+    private void writeEmptyExtensionsDocumentation(final String nifiApiVersion) throws MojoExecutionException {
+        final File docsFile = getExtensionsDocumentationFile();
+        createDirectory(docsFile.getParentFile());
+
+        final File additionalDetailsDir = new File(docsFile.getParentFile(), "additional-details");
+        createDirectory(additionalDetailsDir);
+
+        try (final OutputStream out = new FileOutputStream(docsFile)) {
+            final XMLStreamWriter xmlWriter = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+            try {
+                writeManifestHeader(xmlWriter, nifiApiVersion);
+
+                xmlWriter.writeStartElement("extensions");
+                xmlWriter.writeEndElement();
+                xmlWriter.writeEndElement();
+            } finally {
+                xmlWriter.close();
+            }
+        } catch (final IOException | XMLStreamException e) {
+            throw new MojoExecutionException("Failed to create Extension Documentation", e);
+        }
+    }
+
+    /**
+     * Determines whether the classes directory or any of the dependencies register NiFi services, without creating any ClassLoaders.
+     */
+    private boolean hasExtensionRegistrations() throws IOException {
+        final ServiceRegistrationScanner registrationScanner = new ServiceRegistrationScanner(ServiceRegistrationScanner.NIFI_SERVICE_PREFIX);
+        if (!registrationScanner.scan(getClassesDirectory()).isEmpty()) {
+            return true;
+        }
+
+        for (final Artifact artifact : project.getArtifacts()) {
+            final File artifactFile = artifact.getFile();
+            if (artifactFile != null && !NarDependencyUtils.NAR.equals(artifact.getType()) && !registrationScanner.scan(artifactFile).isEmpty()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Determines the NiFi API version in the same way as when the extension ClassLoader is created, so that the manifest has the same
+     * system API version whether or not there are extensions to document.
+     *
+     * @return the NiFi API version, or <code>null</code> if it cannot be determined
+     */
+    private String determineNiFiApiVersion() {
+        try {
+            return createClassLoaderFactory().determineNiFiApiVersion();
+        } catch (final MojoExecutionException | ProjectBuildingException e) {
+            getLog().debug("Unable to determine the NiFi API version without creating a ClassLoader", e);
+            return null;
+        }
     }
 
     private void writeXmlTag(final XMLStreamWriter xmlWriter, final String tagName, final String value) throws XMLStreamException {
@@ -646,8 +1264,9 @@ public class NarMojo extends AbstractMojo {
     }
 
     private void writeDocumentation(final Set<ExtensionDefinition> extensionDefinitions, final ExtensionClassLoader classLoader,
-                                    final Class<?> docWriterClass, final XMLStreamWriter xmlWriter, final File additionalDetailsDir)
-        throws InvocationTargetException, NoSuchMethodException, ClassNotFoundException, InstantiationException, IllegalAccessException, IOException {
+                                    final DocumentationWriterBridge docWriterBridge, final XMLOutputFactory xmlOutputFactory, final XMLStreamWriter xmlWriter,
+                                    final OutputStream out)
+        throws ReflectiveOperationException, IOException, XMLStreamException {
 
         final Set<ExtensionDefinition> sorted = new TreeSet<>(new Comparator<ExtensionDefinition>() {
             public int compare(ExtensionDefinition e1, ExtensionDefinition e2) {
@@ -656,105 +1275,146 @@ public class NarMojo extends AbstractMojo {
         });
         sorted.addAll(extensionDefinitions);
 
-        for (final ExtensionDefinition definition : sorted) {
-            writeDocumentation(definition, classLoader, docWriterClass, xmlWriter);
+        // extensions are measured one at a time while profiling, so that their times do not include waiting for one another
+        final int threads = renderDocumentationInParallel && !isProfilingExtensions() ? ParallelTasks.getThreadCount(documentationThreads) : 1;
+        if (threads <= 1 || sorted.size() <= 1) {
+            for (final ExtensionDefinition definition : sorted) {
+                writeDocumentation(definition, classLoader, docWriterBridge, xmlWriter);
+            }
+            return;
         }
 
-        final Set<String> extensionNames = sorted.stream()
-            .map(ExtensionDefinition::getExtensionName)
-            .collect(Collectors.toSet());
+        // each extension is rendered into its own buffer, and the buffers are written in sorted order once all of them are complete
+        final List<Callable<byte[]>> renderTasks = new ArrayList<>();
+        for (final ExtensionDefinition definition : sorted) {
+            renderTasks.add(() -> renderDocumentation(definition, classLoader, docWriterBridge, xmlOutputFactory));
+        }
 
+        final List<byte[]> fragments;
         try {
-            writeAdditionalDetails(classLoader, extensionNames, additionalDetailsDir);
+            fragments = ParallelTasks.invokeAll(renderTasks, threads, "Document Extensions");
+        } catch (final ReflectiveOperationException | IOException | XMLStreamException | RuntimeException e) {
+            throw e;
         } catch (final Exception e) {
-            throw new IOException("Unable to extract Additional Details", e);
+            throw new IOException("Failed to generate documentation for extensions", e);
+        }
+
+        // writing empty characters closes the start tag that is still open, so that the fragments are written after it
+        xmlWriter.writeCharacters("");
+        xmlWriter.flush();
+        for (final byte[] fragment : fragments) {
+            out.write(fragment);
+        }
+    }
+
+    /**
+     * Renders the documentation of a single extension with a writer of its own, which produces the same bytes that the extension's
+     * documentation would make up in the extension manifest as long as the writer is created by the same factory as the manifest's.
+     */
+    private byte[] renderDocumentation(final ExtensionDefinition extensionDefinition, final ExtensionClassLoader classLoader,
+                                       final DocumentationWriterBridge docWriterBridge, final XMLOutputFactory xmlOutputFactory)
+        throws ReflectiveOperationException, IOException, XMLStreamException {
+
+        final ByteArrayOutputStream fragment = new ByteArrayOutputStream();
+
+        final Thread currentThread = Thread.currentThread();
+        final ClassLoader currentContextClassLoader = currentThread.getContextClassLoader();
+        currentThread.setContextClassLoader(classLoader);
+        try {
+            final XMLStreamWriter fragmentWriter = xmlOutputFactory.createXMLStreamWriter(fragment, "UTF-8");
+            try {
+                writeDocumentation(extensionDefinition, classLoader, docWriterBridge, fragmentWriter);
+                fragmentWriter.flush();
+            } finally {
+                fragmentWriter.close();
+            }
+        } finally {
+            currentThread.setContextClassLoader(currentContextClassLoader);
         }
 
+        return fragment.toByteArray();
     }
 
     private void writeDocumentation(final ExtensionDefinition extensionDefinition, final ExtensionClassLoader classLoader,
-                                    final Class<?> docWriterClass, final XMLStreamWriter xmlWriter)
-        throws NoSuchMethodException, IllegalAccessException, InvocationTargetException, InstantiationException, ClassNotFoundException, IOException {
+                                    final DocumentationWriterBridge docWriterBridge, final XMLStreamWriter xmlWriter)
+        throws ReflectiveOperationException {
 
         getLog().debug("Generating documentation for " + extensionDefinition.getExtensionName() + " using ClassLoader:" + System.lineSeparator() + classLoader.toTree());
-        final Object docWriter = docWriterClass.getConstructor(XMLStreamWriter.class).newInstance(xmlWriter);
-        final Class<?> configurableComponentClass = Class.forName("org.apache.nifi.components.ConfigurableComponent", false, classLoader);
+        final Object docWriter = docWriterBridge.createWriter(xmlWriter);
 
+        // loading, initializing and constructing the extension are separate steps so that the cost of each can be measured
+        final int definedClassCount = ExtensionClassLoader.getDefinedClassCount();
+        final long loadStart = System.nanoTime();
         final Class<?> extensionClass = Class.forName(extensionDefinition.getExtensionName(), false, classLoader);
+        final long initStart = System.nanoTime();
+        Class.forName(extensionDefinition.getExtensionName(), true, classLoader);
+        final long constructStart = System.nanoTime();
         final Object extensionInstance = extensionClass.newInstance();
+        final long constructEnd = System.nanoTime();
+        final int classesLoaded = ExtensionClassLoader.getDefinedClassCount() - definedClassCount;
 
-        final Method initMethod = docWriterClass.getMethod("initialize", configurableComponentClass);
-        initMethod.invoke(docWriter, extensionInstance);
+        docWriterBridge.initialize(docWriter, extensionInstance);
 
-        final Map<String,ServiceAPIDefinition> propertyServiceDefinitions = getRequiredServiceDefinitions(extensionClass, extensionInstance);
+        final long propertyDescriptorsStart = System.nanoTime();
+        final List<Object> propertyDescriptors = docWriterBridge.getPropertyDescriptors(extensionInstance);
+        final long propertyDescriptorsEnd = System.nanoTime();
+
+        final ExtensionCostReport costReport = extensionCostReport;
+        if (costReport != null) {
+            costReport.add(new ExtensionCostReport.ExtensionCost(extensionDefinition.getExtensionType(), extensionDefinition.getExtensionName(),
+                initStart - loadStart, constructStart - initStart, constructEnd - constructStart, propertyDescriptorsEnd - propertyDescriptorsStart, classesLoaded));
+        }
+
+        final Map<String,ServiceAPIDefinition> propertyServiceDefinitions = getRequiredServiceDefinitions(docWriterBridge, propertyDescriptors);
         final Set<ServiceAPIDefinition> providedServiceDefinitions = extensionDefinition.getProvidedServiceAPIs();
 
         if ((providedServiceDefinitions == null || providedServiceDefinitions.isEmpty())
                 && (propertyServiceDefinitions == null || propertyServiceDefinitions.isEmpty())) {
-            final Method writeMethod = docWriterClass.getMethod("write", configurableComponentClass);
-            writeMethod.invoke(docWriter, extensionInstance);
+            docWriterBridge.write(docWriter, extensionInstance);
         } else {
-            final Class<?> serviceApiClass = Class.forName("org.apache.nifi.documentation.StandardServiceAPI", false, classLoader);
-            final List<Object> providedServices = getDocumentationServiceAPIs(serviceApiClass, providedServiceDefinitions);
-            final Map<String,Object> propertyServices = getDocumentationServiceAPIs(serviceApiClass, propertyServiceDefinitions);
+            final List<Object> providedServices = getDocumentationServiceAPIs(docWriterBridge, providedServiceDefinitions);
+            final Map<String,Object> propertyServices = getDocumentationServiceAPIs(docWriterBridge, propertyServiceDefinitions);
 
-            final Method writeMethod = docWriterClass.getMethod("write", configurableComponentClass, Collection.class, Map.class);
-            writeMethod.invoke(docWriter, extensionInstance, providedServices, propertyServices);
+            docWriterBridge.write(docWriter, extensionInstance, providedServices, propertyServices);
         }
     }
 
-    private List<Object> getDocumentationServiceAPIs(Class<?> serviceApiClass, Set<ServiceAPIDefinition> serviceDefinitions)
-            throws NoSuchMethodException, InstantiationException, IllegalAccessException, InvocationTargetException {
-        final Constructor<?> ctr = serviceApiClass.getConstructor(String.class, String.class, String.class, String.class);
-
+    private List<Object> getDocumentationServiceAPIs(final DocumentationWriterBridge docWriterBridge, final Set<ServiceAPIDefinition> serviceDefinitions)
+            throws ReflectiveOperationException {
         final List<Object> providedServices = new ArrayList<>();
 
         for (final ServiceAPIDefinition definition : serviceDefinitions) {
-            final Object serviceApi = ctr.newInstance(definition.getServiceAPIClassName(), definition.getServiceGroupId(), definition.getServiceArtifactId(), definition.getServiceVersion());
-            providedServices.add(serviceApi);
+            providedServices.add(docWriterBridge.createServiceAPI(definition));
         }
         return providedServices;
     }
 
-    private Map<String,Object> getDocumentationServiceAPIs(Class<?> serviceApiClass, Map<String,ServiceAPIDefinition> serviceDefinitions)
-            throws NoSuchMethodException, InstantiationException, IllegalAccessException, InvocationTargetException {
-        final Constructor<?> ctr = serviceApiClass.getConstructor(String.class, String.class, String.class, String.class);
-
+    private Map<String,Object> getDocumentationServiceAPIs(final DocumentationWriterBridge docWriterBridge, final Map<String,ServiceAPIDefinition> serviceDefinitions)
+            throws ReflectiveOperationException {
         final Map<String,Object> providedServices = new HashMap<>();
 
         for (final Map.Entry<String,ServiceAPIDefinition> entry : serviceDefinitions.entrySet()) {
-            final String propName = entry.getKey();
-            final ServiceAPIDefinition definition = entry.getValue();
-
-            final Object serviceApi = ctr.newInstance(definition.getServiceAPIClassName(), definition.getServiceGroupId(), definition.getServiceArtifactId(), definition.getServiceVersion());
-            providedServices.put(propName, serviceApi);
+            providedServices.put(entry.getKey(), docWriterBridge.createServiceAPI(entry.getValue()));
         }
         return providedServices;
     }
 
-    private Map<String,ServiceAPIDefinition> getRequiredServiceDefinitions(final Class<?> extensionClass, final Object extensionInstance)
-            throws NoSuchMethodException, InvocationTargetException, IllegalAccessException {
+    private Map<String,ServiceAPIDefinition> getRequiredServiceDefinitions(final DocumentationWriterBridge docWriterBridge, final List<Object> propertyDescriptors)
+            throws ReflectiveOperationException {
         final Map<String,ServiceAPIDefinition> requiredServiceAPIDefinitions = new HashMap<>();
 
-        final Method writeMethod = extensionClass.getMethod("getPropertyDescriptors");
-        final List<Object> propertyDescriptors = (List<Object>) writeMethod.invoke(extensionInstance);
-
         if (propertyDescriptors == null) {
             return requiredServiceAPIDefinitions;
         }
 
         for (final Object propDescriptor : propertyDescriptors) {
-            final Method nameMethod = propDescriptor.getClass().getMethod("getName");
-            final String propName = (String) nameMethod.invoke(propDescriptor);
-
-            final Method serviceDefinitionMethod = propDescriptor.getClass().getMethod("getControllerServiceDefinition");
-            final Object serviceDefinition = serviceDefinitionMethod.invoke(propDescriptor);
+            final String propName = docWriterBridge.getPropertyName(propDescriptor);
+            final Class<?> serviceDefinitionClass = docWriterBridge.getControllerServiceDefinition(propDescriptor);
 
-            if (serviceDefinition == null) {
+            if (serviceDefinitionClass == null) {
                 continue;
             }
 
-            final Class<?> serviceDefinitionClass = (Class<?>) serviceDefinition;
             if (CONTROLLER_SERVICE_CLASS_NAME.equals(serviceDefinitionClass.getName())) {
                 continue;
             }
@@ -782,81 +1442,37 @@ public class NarMojo extends AbstractMojo {
     }
 
     private void writeAdditionalDetails(final ExtensionClassLoader classLoader, final Set<String> extensionNames, final File additionalDetailsDir)
-        throws URISyntaxException, IOException, MojoExecutionException {
+        throws URISyntaxException, IOException {
 
+        final List<File> jarFiles = new ArrayList<>();
         for (final URL url : classLoader.getURLs()) {
             final File file = new File(url.toURI());
-            final String filename = file.getName();
-            if (!filename.endsWith(".jar")) {
-                continue;
-            }
-
-            writeAdditionalDetails(file, extensionNames, additionalDetailsDir);
-        }
-    }
-
-    private void writeAdditionalDetails(final File file, final Set<String> extensionNames, final File additionalDetailsDir) throws IOException, MojoExecutionException {
-        final JarFile jarFile = new JarFile(file);
-
-        for (final Enumeration<JarEntry> jarEnumeration = jarFile.entries(); jarEnumeration.hasMoreElements();) {
-            final JarEntry jarEntry = jarEnumeration.nextElement();
-
-            final String entryName = jarEntry.getName();
-            if (!entryName.startsWith("docs/")) {
-                continue;
-            }
-
-            final int nextSlashIndex = entryName.indexOf("/", 5);
-            if (nextSlashIndex < 0) {
-                continue;
-            }
-
-            final String componentName = entryName.substring(5, nextSlashIndex);
-            if (!extensionNames.contains(componentName)) {
-                continue;
-            }
-
-            if (jarEntry.isDirectory()) {
-                continue;
-            }
-
-            if (entryName.length() < nextSlashIndex + 1) {
-                continue;
-            }
-
-            getLog().debug("Found file " + entryName + " in " + file + " that consists of documentation for " + componentName);
-            final File componentDirectory = new File(additionalDetailsDir, componentName);
-            final String remainingPath = entryName.substring(nextSlashIndex + 1);
-            final File destinationFile = new File(componentDirectory, remainingPath);
-
-            createDirectory(destinationFile.getParentFile());
-
-            try (final InputStream in = jarFile.getInputStream(jarEntry);
-                 final OutputStream out = new FileOutputStream(destinationFile)) {
-                copy(in, out);
+            if (file.getName().endsWith(".jar")) {
+                jarFiles.add(file);
             }
         }
-    }
 
-    private void copy(final InputStream in, final OutputStream out) throws IOException {
-        final byte[] buffer = new byte[8192];
-        int len;
-        while ((len = in.read(buffer)) >= 0) {
-            out.write(buffer, 0, len);
-        }
+        // the jars are kept in ClassLoader order, so that when several of them contain the same file the last one wins
+        final AdditionalDetailsExtractor extractor = new AdditionalDetailsExtractor(getLog(), ParallelTasks.getThreadCount(documentationThreads));
+        extractor.extract(extractor.find(jarFiles, extensionNames), additionalDetailsDir);
     }
 
 
     private ExtensionClassLoaderFactory createClassLoaderFactory() {
         return new ExtensionClassLoaderFactory.Builder()
-            .artifactResolver(resolver)
+            .repositorySystem(repositorySystem)
+            .remoteRepositories(project.getRemoteProjectRepositories())
             .dependencyGraphBuilder(dependencyGraphBuilder)
             .localRepository(local)
             .log(getLog())
             .project(project)
             .projectBuilder(projectBuilder)
             .repositorySession(repoSession)
-            .artifactHandlerManager(artifactHandlerManager)
+            .resolutionThreads(ParallelTasks.getThreadCount(resolutionThreads))
+            .dependencyCacheDirectory(cacheParentNars ? new File(cacheDirectory, "parent-nars") : null)
+            .modelBuilder(modelBuilder)
+            .indexClassLoaders(indexClassLoaders)
+            .readNarDescriptors(readDescriptors)
             .build();
     }
 
@@ -873,32 +1489,63 @@ public class NarMojo extends AbstractMojo {
 
 
     private void copyDependencies() throws MojoExecutionException {
+        final StagingMode mode = StagingMode.fromValue(stagingMode);
+        if (mode == StagingMode.DIRECT) {
+            getLog().info("Bundled dependencies will be added to the NAR directly from the local repository");
+            return;
+        }
+
         DependencyStatusSets dss = getDependencySets(this.failOnMissingClassifierArtifact);
-        Set<Artifact> artifacts = dss.getResolvedDependencies();
 
-        for (Artifact artifact : artifacts) {
-            copyArtifact(artifact);
+        // copy in a well known order so that the log output is the same regardless of how the copies are scheduled
+        final List<Artifact> artifacts = new ArrayList<>(dss.getResolvedDependencies());
+        Collections.sort(artifacts);
+
+        final List<Callable<Void>> copyTasks = new ArrayList<>(artifacts.size());
+        for (final Artifact artifact : artifacts) {
+            final File destFile = getDestinationFile(artifact);
+            logCopy(artifact.getFile(), destFile);
+
+            copyTasks.add(() -> {
+                transferFile(artifact.getFile(), destFile, mode);
+                return null;
+            });
         }
 
-        artifacts = dss.getSkippedDependencies();
-        for (Artifact artifact : artifacts) {
+        try {
+            ParallelTasks.invokeAll(copyTasks, ParallelTasks.getThreadCount(copyThreads), "Copy NAR Dependencies");
+        } catch (final MojoExecutionException e) {
+            throw e;
+        } catch (final Exception e) {
+            throw new MojoExecutionException("Failed to copy NAR dependencies", e);
+        }
+
+        final List<Artifact> skippedArtifacts = new ArrayList<>(dss.getSkippedDependencies());
+        Collections.sort(skippedArtifacts);
+        for (Artifact artifact : skippedArtifacts) {
             getLog().debug(artifact.getFile().getName() + " already exists in destination.");
         }
     }
 
     protected void copyArtifact(Artifact artifact) throws MojoExecutionException {
+        copyFile(artifact.getFile(), getDestinationFile(artifact));
+    }
+
+    private File getDestinationFile(final Artifact artifact) {
         String destFileName = DependencyUtil.getFormattedFileName(artifact, false);
         final File destDir = DependencyUtil.getFormattedOutputDirectory(false, false, false, false, false, getDependenciesDirectory(), artifact);
-        final File destFile = new File(destDir, destFileName);
-        copyFile(artifact.getFile(), destFile);
+        return new File(destDir, destFileName);
     }
 
     protected Artifact getResolvedPomArtifact(Artifact artifact) {
         Artifact pomArtifact = this.factory.createArtifact(artifact.getGroupId(), artifact.getArtifactId(), artifact.getVersion(), "", "pom");
         // Resolve the pom artifact using repos
+        final ArtifactRequest request = new ArtifactRequest(RepositoryUtils.toArtifact(pomArtifact), project.getRemoteProjectRepositories(), null);
         try {
-            this.resolver.resolve(pomArtifact, this.remoteRepos, this.local);
-        } catch (ArtifactResolutionException | ArtifactNotFoundException e) {
+            final ArtifactResult result = repositorySystem.resolveArtifact(repoSession, request);
+            pomArtifact.setFile(result.getArtifact().getFile());
+            pomArtifact.setResolved(true);
+        } catch (ArtifactResolutionException e) {
             getLog().info(e.getMessage());
         }
         return pomArtifact;
@@ -1000,9 +1647,19 @@ public class NarMojo extends AbstractMojo {
     }
 
     protected void copyFile(File artifact, File destFile) throws MojoExecutionException {
+        logCopy(artifact, destFile);
+        transferFile(artifact, destFile, StagingMode.fromValue(stagingMode));
+    }
+
+    private void logCopy(final File artifact, final File destFile) {
+        getLog().info("Copying " + (this.outputAbsoluteArtifactFilename ? artifact.getAbsolutePath() : artifact.getName()) + " to " + destFile);
+    }
+
+    private void transferFile(final File artifact, final File destFile, final StagingMode mode) throws MojoExecutionException {
         try {
-            getLog().info("Copying " + (this.outputAbsoluteArtifactFilename ? artifact.getAbsolutePath() : artifact.getName()) + " to " + destFile);
-            FileUtils.copyFile(artifact, destFile);
+            if (!mode.stage(artifact, destFile)) {
+                getLog().debug("Unable to stage " + artifact + " using staging mode " + mode + "; copied it to " + destFile + " instead");
+            }
         } catch (Exception e) {
             throw new MojoExecutionException("Error copying artifact from " + artifact + " to " + destFile, e);
         }
@@ -1014,17 +1671,69 @@ public class NarMojo extends AbstractMojo {
     }
 
     private File getDependenciesDirectory() {
-        return new File(getClassesDirectory(), "META-INF/bundled-dependencies");
+        return new File(getClassesDirectory(), BUNDLED_DEPENDENCIES_PATH);
     }
 
     private void makeNar() throws MojoExecutionException {
-        File narFile = createArchive();
+        attachNar(createArchive());
+    }
 
+    private void attachNar(final File narFile) {
         if (classifier != null) {
             projectHelper.attachArtifact(project, "nar", classifier, narFile);
         } else {
             project.getArtifact().setFile(narFile);
         }
+
+        final File descriptorFile = getNarDescriptorFile();
+        if (isDescriptorAttached() && descriptorFile.exists()) {
+            projectHelper.attachArtifact(project, NarDescriptor.EXTENSION, NarDescriptor.CLASSIFIER, descriptorFile);
+        }
+    }
+
+    private boolean isDescriptorAttached() {
+        return attachDescriptor && (classifier == null || classifier.trim().isEmpty());
+    }
+
+    private File getNarDescriptorFile() {
+        return new File(projectBuildDirectory, finalName + "-" + NarDescriptor.CLASSIFIER + "." + NarDescriptor.EXTENSION);
+    }
+
+    /**
+     * Writes the descriptor of the NAR. The descriptor only saves work for the builds of child NARs, so failing to write it does not
+     * fail the build; the descriptor is simply not attached.
+     */
+    private void writeNarDescriptor() throws MojoExecutionException {
+        final File descriptorFile = getNarDescriptorFile();
+        try {
+            Files.deleteIfExists(descriptorFile.toPath());
+        } catch (final IOException e) {
+            throw new MojoExecutionException("Could not delete NAR descriptor " + descriptorFile, e);
+        }
+
+        try {
+            createNarDescriptor().write(descriptorFile);
+        } catch (final IOException | DependencyGraphBuilderException e) {
+            getLog().warn("Unable to create the NAR descriptor, so it will not be attached", e);
+            try {
+                Files.deleteIfExists(descriptorFile.toPath());
+            } catch (final IOException ignored) {
+                // the descriptor is only attached if it exists, so a partial file that cannot be deleted is still overwritten by the next build
+            }
+        }
+    }
+
+    private NarDescriptor createNarDescriptor() throws DependencyGraphBuilderException {
+        final ProjectBuildingRequest projectRequest = new DefaultProjectBuildingRequest();
+        projectRequest.setRepositorySession(repoSession);
+        projectRequest.setSystemProperties(System.getProperties());
+        projectRequest.setLocalRepository(local);
+        projectRequest.setProject(project);
+
+        // NARs include their dependencies, so NAR dependencies are leaves of the tree; consumers read the parent NAR's own descriptor
+        final NarDescriptor.Node dependencyTree = NarDescriptor.Node.fromDependencyNode(dependencyGraphBuilder.buildDependencyGraph(projectRequest, null), false);
+
+        return new NarDescriptor(dependencyTree);
     }
 
     public File createArchive() throws MojoExecutionException {
@@ -1036,12 +1745,37 @@ public class NarMojo extends AbstractMojo {
         archiver.setOutputFile(narFile);
         Date timestamp = archiver.configureReproducible(outputTimestamp); // configure for Reproducible Builds based on outputTimestamp value
         archive.setForced(forceCreation);
+        if (storeAddedZips && !isArchiveSettingConfigured("recompressAddedZips")) {
+            archive.setRecompressAddedZips(false);
+        }
+        if (!compress) {
+            archive.setCompress(false);
+        }
 
         try {
             File contentDirectory = getClassesDirectory();
+            final StagingMode mode = StagingMode.fromValue(stagingMode);
+            boolean contentAdded = false;
             if (contentDirectory.exists()) {
-                archiver.getArchiver().addDirectory(contentDirectory, getIncludes(), getExcludes());
-            } else {
+                if (mode == StagingMode.SYMLINK_THEN_ARCHIVE) {
+                    // add the targets of the staged links explicitly so that the NAR never contains the links themselves
+                    archiver.getArchiver().addDirectory(contentDirectory, getIncludes(), getExcludes(BUNDLED_DEPENDENCIES_PATH + "**"));
+                    addLinkedDependencies(archiver.getArchiver());
+                } else if (mode == StagingMode.DIRECT) {
+                    // ignore anything left in the staging directory by previous builds
+                    archiver.getArchiver().addDirectory(contentDirectory, getIncludes(), getExcludes(BUNDLED_DEPENDENCIES_PATH + "**"));
+                } else {
+                    archiver.getArchiver().addDirectory(contentDirectory, getIncludes(), getExcludes());
+                }
+                contentAdded = true;
+            }
+
+            // dependencies are not staged in direct mode, so they are added even when there is no classes directory, as for pom packaged NARs
+            if (mode == StagingMode.DIRECT && addDirectDependencies(archiver.getArchiver())) {
+                contentAdded = true;
+            }
+
+            if (!contentAdded) {
                 getLog().warn("NAR will be empty - no content was marked for inclusion!");
             }
 
@@ -1104,6 +1838,55 @@ public class NarMojo extends AbstractMojo {
         }
     }
 
+    /**
+     * Determines whether the given setting of the <code>archive</code> parameter was configured explicitly, rather than being left at
+     * the default of the Maven Archiver, which cannot be told apart from an explicit value once the configuration has been applied.
+     */
+    private boolean isArchiveSettingConfigured(final String name) {
+        final Xpp3Dom configuration = mojoExecution == null ? null : mojoExecution.getConfiguration();
+        final Xpp3Dom archiveConfiguration = configuration == null ? null : configuration.getChild("archive");
+        return archiveConfiguration != null && archiveConfiguration.getChild(name) != null;
+    }
+
+    private void addLinkedDependencies(final JarArchiver jarArchiver) throws IOException {
+        final File dependenciesDirectory = getDependenciesDirectory();
+        if (!dependenciesDirectory.exists()) {
+            return;
+        }
+
+        final List<Path> stagedFiles;
+        try (final Stream<Path> paths = Files.walk(dependenciesDirectory.toPath())) {
+            stagedFiles = paths.filter(path -> !Files.isDirectory(path)).sorted().collect(Collectors.toList());
+        }
+
+        for (final Path stagedFile : stagedFiles) {
+            final String relativePath = dependenciesDirectory.toPath().relativize(stagedFile).toString().replace(File.separatorChar, '/');
+            jarArchiver.addFile(stagedFile.toRealPath().toFile(), BUNDLED_DEPENDENCIES_PATH + relativePath);
+        }
+    }
+
+    /**
+     * Adds the dependencies to the NAR straight from the repository.
+     *
+     * @return <code>true</code> if any dependencies were added, <code>false</code> otherwise
+     */
+    private boolean addDirectDependencies(final JarArchiver jarArchiver) throws MojoExecutionException {
+        final DependencyStatusSets dss = getDependencySets(this.failOnMissingClassifierArtifact);
+
+        final List<Artifact> artifacts = new ArrayList<>(dss.getResolvedDependencies());
+        if (dss.getSkippedDependencies() != null) {
+            artifacts.addAll(dss.getSkippedDependencies());
+        }
+        Collections.sort(artifacts);
+
+        for (final Artifact artifact : artifacts) {
+            final File artifactFile = artifact.getFile();
+            getLog().info("Adding " + (this.outputAbsoluteArtifactFilename ? artifactFile.getAbsolutePath() : artifactFile.getName()) + " to NAR");
+            jarArchiver.addFile(artifactFile, BUNDLED_DEPENDENCIES_PATH + DependencyUtil.getFormattedFileName(artifact, false));
+        }
+        return !artifacts.isEmpty();
+    }
+
     private boolean notEmpty(String value) {
         return value != null && !value.isEmpty();
     }
@@ -1122,6 +1905,13 @@ public class NarMojo extends AbstractMojo {
         return DEFAULT_EXCLUDES;
     }
 
+    private String[] getExcludes(final String additionalExclude) {
+        final String[] configuredExcludes = getExcludes();
+        final String[] allExcludes = Arrays.copyOf(configuredExcludes, configuredExcludes.length + 1);
+        allExcludes[configuredExcludes.length] = additionalExclude;
+        return allExcludes;
+    }
+
     protected File getNarFile(File basedir, String finalName, String classifier) {
         if (classifier == null) {
             classifier = "";
@@ -1185,6 +1975,11 @@ public class NarMojo extends AbstractMojo {
         public String getVersion() {
             return version;
         }
+
+        @Override
+        public String toString() {
+            return groupId + ":" + artifactId + ":" + version;
+        }
     }
 
 }
@@ -33,6 +33,8 @@ import org.apache.maven.project.MavenProject;
 import org.apache.maven.project.ProjectBuilder;
 import org.apache.maven.project.ProjectBuildingException;
 import org.apache.maven.project.ProjectBuildingRequest;
+import org.apache.maven.shared.dependency.graph.DependencyCollectorBuilder;
+import org.apache.maven.shared.dependency.graph.DependencyCollectorBuilderException;
 import org.apache.maven.shared.dependency.graph.DependencyGraphBuilder;
 import org.apache.maven.shared.dependency.graph.DependencyGraphBuilderException;
 import org.apache.maven.shared.dependency.graph.DependencyNode;
@@ -48,7 +50,7 @@ import java.util.Deque;
  * not project those dependences using the traditional maven dependency plugin. This plugin will override that setting in order to print the dependencies being
  * inherited at runtime.
  */
-@Mojo(name = "provided-nar-dependencies", defaultPhase = LifecyclePhase.PACKAGE, threadSafe = true, requiresDependencyResolution = ResolutionScope.RUNTIME)
+@Mojo(name = "provided-nar-dependencies", defaultPhase = LifecyclePhase.PACKAGE, threadSafe = true, requiresDependencyCollection = ResolutionScope.RUNTIME)
 public class NarProvidedDependenciesMojo extends AbstractMojo {
 
     /**
@@ -76,12 +78,26 @@ public class NarProvidedDependenciesMojo extends AbstractMojo {
     @Parameter(property = "mode", defaultValue = "tree")
     private String mode;
 
+    /**
+     * Whether the dependency tree should only be collected from the POMs of the dependencies rather than resolved. Collecting never downloads
+     * or reads the artifacts themselves, which makes the goal much faster on a cold repository and allows it to run offline once the POMs
+     * are available.
+     */
+    @Parameter(property = "collectOnly", defaultValue = "false")
+    private boolean collectOnly;
+
     /**
      * The dependency tree builder to use for verbose output.
      */
     @Component
     private DependencyGraphBuilder dependencyGraphBuilder;
 
+    /**
+     * The dependency collector to use when only collecting the dependency tree.
+     */
+    @Component
+    private DependencyCollectorBuilder dependencyCollectorBuilder;
+
     /**
      * *
      * The {@link ArtifactHandlerManager} into which any extension {@link ArtifactHandler} instances should have been injected when the extensions were loaded.
@@ -110,7 +126,7 @@ public class NarProvidedDependenciesMojo extends AbstractMojo {
             artifactHandlerManager.addHandlers(NarDependencyUtils.createNarHandlerMap(narRequest, project, projectBuilder));
 
             // get the dependency tree
-            final DependencyNode root = dependencyGraphBuilder.buildDependencyGraph(narRequest, null);
+            final DependencyNode root = buildDependencyGraph(narRequest);
 
             // write the appropriate output
             DependencyNodeVisitor visitor = null;
@@ -128,11 +144,19 @@ public class NarProvidedDependenciesMojo extends AbstractMojo {
             // visit and print the results
             root.accept(visitor);
             getLog().info("--- Provided NAR Dependencies ---" + System.lineSeparator() + System.lineSeparator() + visitor);
-        } catch (ProjectBuildingException | DependencyGraphBuilderException e) {
+        } catch (ProjectBuildingException | DependencyGraphBuilderException | DependencyCollectorBuilderException e) {
             throw new MojoExecutionException("Cannot build project dependency tree", e);
         }
     }
 
+    private DependencyNode buildDependencyGraph(final ProjectBuildingRequest narRequest) throws DependencyGraphBuilderException, DependencyCollectorBuilderException {
+        if (collectOnly) {
+            return dependencyCollectorBuilder.collectDependencyGraph(narRequest, null);
+        }
+
+        return dependencyGraphBuilder.buildDependencyGraph(narRequest, null);
+    }
+
     /**
      * Gets the Maven project used by this mojo.
      *
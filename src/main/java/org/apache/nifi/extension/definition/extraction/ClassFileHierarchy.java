@@ -0,0 +1,263 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.extension.definition.extraction;
+
+import org.apache.maven.artifact.Artifact;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the type hierarchy of classes from their class files, as found through a ClassLoader, without loading the classes. Only the
+ * constant pool, the superclass and the implemented interfaces of each class file are read, so neither the classes nor the classes
+ * they refer to are loaded, linked or initialized. Class files are read at most once.
+ */
+class ClassFileHierarchy {
+    private static final int CLASS_FILE_MAGIC = 0xCAFEBABE;
+
+    private final ClassLoader classLoader;
+    private final Map<String, ClassFile> classFiles = new HashMap<>();
+
+    ClassFileHierarchy(final ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * Returns the superclass and the interfaces of the given class.
+     *
+     * @param className the binary name of the class
+     * @return the class file, or <code>null</code> if the ClassLoader cannot find the class
+     * @throws IOException if the class file cannot be read
+     */
+    ClassFile getClassFile(final String className) throws IOException {
+        if (classFiles.containsKey(className)) {
+            return classFiles.get(className);
+        }
+
+        final ClassFile classFile;
+        final URL classFileUrl = classLoader.getResource(getResourceName(className));
+        if (classFileUrl == null) {
+            classFile = null;
+        } else {
+            try (final InputStream in = classFileUrl.openStream()) {
+                classFile = ClassFile.read(in);
+            } catch (final IOException e) {
+                throw new IOException("Failed to read class file of " + className + " from " + classFileUrl, e);
+            }
+        }
+
+        classFiles.put(className, classFile);
+        return classFile;
+    }
+
+    /**
+     * Adds the given interface and all of the interfaces it extends to the given list, in the order in which
+     * {@link Class#getInterfaces()} would visit them. Interfaces whose class files cannot be found are included, but not the
+     * interfaces they extend.
+     */
+    void addInterfaceHierarchy(final String interfaceName, final List<String> interfaceHierarchy) throws IOException {
+        if (interfaceHierarchy.contains(interfaceName)) {
+            return;
+        }
+
+        interfaceHierarchy.add(interfaceName);
+
+        final ClassFile classFile = getClassFile(interfaceName);
+        if (classFile != null) {
+            for (final String parentInterface : classFile.getInterfaces()) {
+                addInterfaceHierarchy(parentInterface, interfaceHierarchy);
+            }
+        }
+    }
+
+    /**
+     * Determines whether the given interface is the given type or extends it, directly or indirectly.
+     */
+    boolean isAssignableTo(final String interfaceName, final String typeName) throws IOException {
+        final List<String> interfaceHierarchy = new ArrayList<>();
+        addInterfaceHierarchy(interfaceName, interfaceHierarchy);
+        return interfaceHierarchy.contains(typeName);
+    }
+
+    /**
+     * Determines which ClassLoader in the parent chain of the ClassLoader would define the given class. ClassLoaders delegate to their
+     * parent first, so that is the ClassLoader closest to the root of the chain whose own URLs contain the class file.
+     *
+     * @param className the binary name of the class
+     * @return the ExtensionClassLoader that would define the class, or <code>null</code> if the class would be defined by a
+     * ClassLoader that is not an ExtensionClassLoader or cannot be found
+     */
+    ExtensionClassLoader getDefiningClassLoader(final String className) {
+        final Deque<ExtensionClassLoader> chain = new ArrayDeque<>();
+        ClassLoader current = classLoader;
+        while (current instanceof ExtensionClassLoader) {
+            chain.push((ExtensionClassLoader) current);
+            current = current.getParent();
+        }
+
+        final String resourceName = getResourceName(className);
+        if (current != null && current.getResource(resourceName) != null) {
+            return null;
+        }
+
+        for (final ExtensionClassLoader extensionClassLoader : chain) {
+            if (extensionClassLoader.findResource(resourceName) != null) {
+                return extensionClassLoader;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the NAR whose ClassLoader would define the given class, or <code>null</code> if it is not defined by a NAR's ClassLoader
+     */
+    Artifact getDefiningNar(final String className) {
+        final ExtensionClassLoader definingClassLoader = getDefiningClassLoader(className);
+        return definingClassLoader == null ? null : definingClassLoader.getNarArtifact();
+    }
+
+    private static String getResourceName(final String className) {
+        return className.replace('.', '/') + ".class";
+    }
+
+    /**
+     * The names of the superclass and interfaces of a class, as read from its class file.
+     */
+    static class ClassFile {
+        private final String superclassName;
+        private final List<String> interfaces;
+
+        private ClassFile(final String superclassName, final List<String> interfaces) {
+            this.superclassName = superclassName;
+            this.interfaces = Collections.unmodifiableList(interfaces);
+        }
+
+        /**
+         * @return the binary name of the superclass, or <code>null</code> for <code>java.lang.Object</code> and for interfaces
+         * that declare no superclass
+         */
+        String getSuperclassName() {
+            return superclassName;
+        }
+
+        /**
+         * @return the binary names of the directly implemented interfaces, in declaration order
+         */
+        List<String> getInterfaces() {
+            return interfaces;
+        }
+
+        static ClassFile read(final InputStream rawIn) throws IOException {
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(rawIn));
+            if (in.readInt() != CLASS_FILE_MAGIC) {
+                throw new IOException("Not a class file");
+            }
+
+            // minor and major version
+            in.readUnsignedShort();
+            in.readUnsignedShort();
+
+            final int constantPoolCount = in.readUnsignedShort();
+            final String[] utf8Constants = new String[constantPoolCount];
+            final int[] classNameIndexes = new int[constantPoolCount];
+
+            for (int i = 1; i < constantPoolCount; i++) {
+                final int tag = in.readUnsignedByte();
+                switch (tag) {
+                    case 1: // Utf8
+                        utf8Constants[i] = in.readUTF();
+                        break;
+                    case 7: // Class
+                        classNameIndexes[i] = in.readUnsignedShort();
+                        break;
+                    case 8: // String
+                    case 16: // MethodType
+                    case 19: // Module
+                    case 20: // Package
+                        skipFully(in, 2);
+                        break;
+                    case 15: // MethodHandle
+                        skipFully(in, 3);
+                        break;
+                    case 3: // Integer
+                    case 4: // Float
+                    case 9: // Fieldref
+                    case 10: // Methodref
+                    case 11: // InterfaceMethodref
+                    case 12: // NameAndType
+                    case 17: // Dynamic
+                    case 18: // InvokeDynamic
+                        skipFully(in, 4);
+                        break;
+                    case 5: // Long
+                    case 6: // Double
+                        skipFully(in, 8);
+                        // eight byte constants take up two entries of the constant pool
+                        i++;
+                        break;
+                    default:
+                        throw new IOException("Unknown constant pool tag " + tag);
+                }
+            }
+
+            // access flags and this class
+            in.readUnsignedShort();
+            in.readUnsignedShort();
+
+            final int superclassIndex = in.readUnsignedShort();
+            final String superclassName = superclassIndex == 0 ? null : getClassName(superclassIndex, utf8Constants, classNameIndexes);
+
+            final int interfaceCount = in.readUnsignedShort();
+            final List<String> interfaces = new ArrayList<>(interfaceCount);
+            for (int i = 0; i < interfaceCount; i++) {
+                interfaces.add(getClassName(in.readUnsignedShort(), utf8Constants, classNameIndexes));
+            }
+
+            return new ClassFile(superclassName, interfaces);
+        }
+
+        private static String getClassName(final int classIndex, final String[] utf8Constants, final int[] classNameIndexes) throws IOException {
+            if (classIndex <= 0 || classIndex >= classNameIndexes.length || utf8Constants[classNameIndexes[classIndex]] == null) {
+                throw new IOException("Invalid class reference " + classIndex);
+            }
+
+            return utf8Constants[classNameIndexes[classIndex]].replace('/', '.');
+        }
+
+        private static void skipFully(final DataInputStream in, final int length) throws IOException {
+            int remaining = length;
+            while (remaining > 0) {
+                final int skipped = in.skipBytes(remaining);
+                if (skipped <= 0) {
+                    throw new IOException("Unexpected end of class file");
+                }
+                remaining -= skipped;
+            }
+        }
+    }
+}
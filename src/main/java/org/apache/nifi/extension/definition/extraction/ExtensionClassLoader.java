@@ -25,6 +25,14 @@ import java.util.Arrays;
 import java.util.Collection;
 
 public class ExtensionClassLoader extends URLClassLoader {
+    static {
+        // parent ClassLoaders are shared by modules that are built concurrently
+        ClassLoader.registerAsParallelCapable();
+    }
+
+    // the classes defined by ExtensionClassLoaders on each thread, so that the cost of loading an extension can be attributed to it
+    private static final ThreadLocal<int[]> DEFINED_CLASS_COUNT = ThreadLocal.withInitial(() -> new int[1]);
+
     private final URL[] urls;
     private final Artifact narArtifact;
     private final Collection<Artifact> allArtifacts;
@@ -49,6 +57,24 @@ public class ExtensionClassLoader extends URLClassLoader {
         }
     }
 
+    /**
+     * @return the number of classes that ExtensionClassLoaders have defined on the current thread
+     */
+    public static int getDefinedClassCount() {
+        return DEFINED_CLASS_COUNT.get()[0];
+    }
+
+    protected static void countDefinedClass() {
+        DEFINED_CLASS_COUNT.get()[0]++;
+    }
+
+    @Override
+    protected Class<?> findClass(final String name) throws ClassNotFoundException {
+        final Class<?> definedClass = super.findClass(name);
+        countDefinedClass();
+        return definedClass;
+    }
+
     public String getNiFiApiVersion() {
         final Collection<Artifact> artifacts = getAllArtifacts();
         for (final Artifact artifact : artifacts) {
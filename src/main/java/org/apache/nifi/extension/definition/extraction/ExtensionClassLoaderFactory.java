@@ -16,15 +16,10 @@
  */
 package org.apache.nifi.extension.definition.extraction;
 
+import org.apache.maven.RepositoryUtils;
 import org.apache.maven.artifact.Artifact;
-import org.apache.maven.artifact.DefaultArtifact;
-import org.apache.maven.artifact.handler.ArtifactHandler;
-import org.apache.maven.artifact.handler.manager.ArtifactHandlerManager;
 import org.apache.maven.artifact.repository.ArtifactRepository;
-import org.apache.maven.artifact.resolver.ArtifactResolutionRequest;
-import org.apache.maven.artifact.resolver.ArtifactResolutionResult;
-import org.apache.maven.artifact.resolver.ArtifactResolver;
-import org.apache.maven.artifact.versioning.VersionRange;
+import org.apache.maven.model.building.ModelBuilder;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.project.DefaultProjectBuildingRequest;
@@ -37,18 +32,40 @@ import org.apache.maven.shared.dependency.graph.DependencyGraphBuilder;
 import org.apache.maven.shared.dependency.graph.DependencyGraphBuilderException;
 import org.apache.maven.shared.dependency.graph.DependencyNode;
 import org.apache.maven.shared.dependency.graph.traversal.DependencyNodeVisitor;
+import org.apache.nifi.utils.NarDescriptor;
+import org.apache.nifi.utils.NarDescriptorResolver;
+import org.apache.nifi.utils.ParallelTasks;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
 import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.collection.CollectRequest;
+import org.eclipse.aether.collection.DependencyCollectionContext;
+import org.eclipse.aether.collection.DependencyCollectionException;
+import org.eclipse.aether.collection.DependencySelector;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.ArtifactResolutionException;
+import org.eclipse.aether.resolution.ArtifactResult;
+import org.eclipse.aether.resolution.VersionRangeRequest;
+import org.eclipse.aether.resolution.VersionRangeResolutionException;
+import org.eclipse.aether.resolution.VersionRangeResult;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
 
 public class ExtensionClassLoaderFactory {
     private final Log log;
@@ -57,8 +74,14 @@ public class ExtensionClassLoaderFactory {
     private final ProjectBuilder projectBuilder;
     private final ArtifactRepository localRepo;
     private final DependencyGraphBuilder dependencyGraphBuilder;
-    private final ArtifactResolver artifactResolver;
-    private final ArtifactHandlerManager artifactHandlerManager;
+    private final RepositorySystem repositorySystem;
+    private final List<RemoteRepository> remoteRepositories;
+    private final NarDependencyCache narDependencyCache;
+    private final ExtensionClassLoaderPool classLoaderPool;
+    private final NarDescriptorResolver narDescriptorResolver;
+    private final PersistentNarDependencyCache persistentDependencyCache;
+    private final int resolutionThreads;
+    private final boolean indexClassLoaders;
 
     private ExtensionClassLoaderFactory(final Builder builder) {
         this.log = builder.log;
@@ -67,8 +90,15 @@ public class ExtensionClassLoaderFactory {
         this.projectBuilder = builder.projectBuilder;
         this.localRepo = builder.localRepo;
         this.dependencyGraphBuilder = builder.dependencyGraphBuilder;
-        this.artifactResolver = builder.artifactResolver;
-        this.artifactHandlerManager = builder.artifactHandlerManager;
+        this.repositorySystem = builder.repositorySystem;
+        this.remoteRepositories = builder.remoteRepositories == null ? Collections.emptyList() : builder.remoteRepositories;
+        this.narDependencyCache = NarDependencyCache.getInstance(builder.repositorySession);
+        this.classLoaderPool = ExtensionClassLoaderPool.getInstance(builder.repositorySession, builder.indexClassLoaders);
+        this.narDescriptorResolver = builder.readNarDescriptors ? new NarDescriptorResolver(builder.repositorySystem, builder.repositorySession, this.remoteRepositories, builder.log) : null;
+        this.persistentDependencyCache = builder.dependencyCacheDirectory == null ? null : new PersistentNarDependencyCache(builder.dependencyCacheDirectory,
+            new PomInheritanceResolver(builder.modelBuilder, builder.repositorySystem, builder.repositorySession, this.remoteRepositories, builder.log), builder.log);
+        this.resolutionThreads = builder.resolutionThreads;
+        this.indexClassLoaders = builder.indexClassLoaders;
     }
 
     private Log getLog() {
@@ -86,7 +116,14 @@ public class ExtensionClassLoaderFactory {
         narArtifacts.forEach(artifact -> getLog().debug(artifact.getArtifactId()));
 
         final ExtensionClassLoader parentClassLoader = createClassLoader(narArtifacts, artifactsHolder);
-        final ExtensionClassLoader classLoader = createClassLoader(narArtifacts, parentClassLoader, narArtifact);
+
+        final ExtensionClassLoader classLoader;
+        try {
+            classLoader = createClassLoader(narArtifacts, parentClassLoader, narArtifact);
+        } catch (final MojoExecutionException | RuntimeException e) {
+            classLoaderPool.release(parentClassLoader);
+            throw e;
+        }
 
         if (getLog().isDebugEnabled()) {
             getLog().debug("Full ClassLoader is:\n" + classLoader.toTree());
@@ -95,19 +132,54 @@ public class ExtensionClassLoaderFactory {
         return classLoader;
     }
 
+    /**
+     * Determines the version of the NiFi API that {@link #createExtensionClassLoader()} would provide to the extensions, and so the
+     * version that their documentation is written for, without creating any ClassLoaders. The NAR's parent NARs are searched as well,
+     * and version ranges are resolved, just as when the ClassLoader is created.
+     *
+     * @return the NiFi API version
+     * @throws MojoExecutionException if no dependency on the NiFi API can be found or its version cannot be resolved
+     */
+    public String determineNiFiApiVersion() throws MojoExecutionException, ProjectBuildingException {
+        final ArtifactsHolder artifactsHolder = new ArtifactsHolder();
+
+        Set<Artifact> narArtifacts = getNarDependencies(project.getArtifact());
+        artifactsHolder.addArtifacts(narArtifacts);
+
+        Artifact nar = removeNarArtifact(new TreeSet<>(narArtifacts));
+        while (nar != null) {
+            narArtifacts = getNarDependencies(nar);
+            artifactsHolder.addArtifacts(narArtifacts);
+            nar = removeNarArtifact(new TreeSet<>(narArtifacts));
+        }
+
+        return determineNiFiApiVersion(artifactsHolder, new DeclaredDependencyIndex(artifactsHolder.getAllArtifacts()));
+    }
+
+    /**
+     * Releases a ClassLoader created by {@link #createExtensionClassLoader()}. The ClassLoader is closed, and its parents are handed
+     * back to the ClassLoader pool that is shared with the other modules of the build.
+     *
+     * @param classLoader the ClassLoader to release
+     */
+    public void release(final ExtensionClassLoader classLoader) {
+        classLoaderPool.release(classLoader);
+    }
+
     private ExtensionClassLoader createClassLoader(final Set<Artifact> artifacts, final ArtifactsHolder artifactsHolder)
             throws MojoExecutionException, ProjectBuildingException {
 
         final Artifact nar = removeNarArtifact(artifacts);
         if (nar == null) {
             final ExtensionClassLoader providedEntityClassLoader = createProvidedEntitiesClassLoader(artifactsHolder);
-            return createClassLoader(artifacts, providedEntityClassLoader, null);
+            return classLoaderPool.acquire(null, artifacts, providedEntityClassLoader, () -> createClassLoader(artifacts, providedEntityClassLoader, null));
         }
 
         final Set<Artifact> narDependencies = getNarDependencies(nar);
         artifactsHolder.addArtifacts(narDependencies);
 
-        return createClassLoader(narDependencies, createClassLoader(narDependencies, artifactsHolder), nar);
+        final ExtensionClassLoader parentClassLoader = createClassLoader(narDependencies, artifactsHolder);
+        return classLoaderPool.acquire(nar, narDependencies, parentClassLoader, () -> createClassLoader(narDependencies, parentClassLoader, nar));
     }
 
 
@@ -132,6 +204,47 @@ public class ExtensionClassLoaderFactory {
     }
 
     private Set<Artifact> getNarDependencies(final Artifact narArtifact) throws MojoExecutionException, ProjectBuildingException {
+        // the project's own NAR is never shared with other modules, so only the NARs it depends on are cached
+        final Set<Artifact> narDependencies = new TreeSet<>(narArtifact.equals(project.getArtifact())
+            ? resolveNar(narArtifact)
+            : narDependencyCache.getArtifacts(narArtifact, this::resolveParentNar));
+        narDependencies.remove(narArtifact);
+        narDependencies.remove(project.getArtifact());
+
+        getLog().debug("Found NAR dependency of " + narArtifact + ", which resolved to the following artifacts: " + narDependencies);
+        return narDependencies;
+    }
+
+    /**
+     * Resolves a NAR that the project depends on. The dependencies are taken from the persistent dependency cache if it is enabled and
+     * holds a valid entry, and otherwise from the descriptor that was published with the NAR if reading descriptors is enabled and
+     * there is one; both avoid building the NAR's project and resolving its dependency graph.
+     */
+    private Set<Artifact> resolveParentNar(final Artifact narArtifact) throws MojoExecutionException, ProjectBuildingException {
+        if (persistentDependencyCache != null) {
+            final Set<Artifact> cachedArtifacts = persistentDependencyCache.load(narArtifact);
+            if (cachedArtifacts != null) {
+                getLog().debug("Using the cached dependencies of " + narArtifact);
+                return cachedArtifacts;
+            }
+        }
+
+        final NarDescriptor descriptor = narDescriptorResolver == null ? null : narDescriptorResolver.resolve(narArtifact);
+        final Set<Artifact> artifacts;
+        if (descriptor == null) {
+            artifacts = resolveNar(narArtifact);
+        } else {
+            getLog().debug("Using the NAR descriptor of " + narArtifact + " to determine its dependencies");
+            artifacts = descriptor.getDependencyTree().getAllArtifacts();
+        }
+
+        if (persistentDependencyCache != null) {
+            persistentDependencyCache.store(narArtifact, artifacts);
+        }
+        return artifacts;
+    }
+
+    private Set<Artifact> resolveNar(final Artifact narArtifact) throws MojoExecutionException, ProjectBuildingException {
         final ProjectBuildingRequest narRequest = new DefaultProjectBuildingRequest();
         narRequest.setRepositorySession(repoSession);
         narRequest.setSystemProperties(System.getProperties());
@@ -141,14 +254,12 @@ public class ExtensionClassLoaderFactory {
 
         final Set<Artifact> narDependencies = new TreeSet<>();
         gatherArtifacts(narResult.getProject(), narDependencies);
-        narDependencies.remove(narArtifact);
-        narDependencies.remove(project.getArtifact());
 
-        getLog().debug("Found NAR dependency of " + narArtifact + ", which resolved to the following artifacts: " + narDependencies);
         return narDependencies;
     }
 
-    private String determineProvidedEntityVersion(final Set<Artifact> artifacts, final String groupId, final String artifactId) throws ProjectBuildingException, MojoExecutionException {
+    private String determineProvidedEntityVersion(final Set<Artifact> artifacts, final DeclaredDependencyIndex dependencyIndex, final String groupId,
+                                                  final String artifactId) {
         getLog().debug("Determining provided entities for " + groupId + ":" + artifactId);
 
         for (final Artifact artifact : artifacts) {
@@ -157,115 +268,91 @@ public class ExtensionClassLoaderFactory {
             }
         }
 
-        return findProvidedDependencyVersion(artifacts, groupId, artifactId);
+        return dependencyIndex.findVersion(groupId, artifactId);
     }
 
-    private String findProvidedDependencyVersion(final Set<Artifact> artifacts, final String groupId, final String artifactId) {
-        final ProjectBuildingRequest projectRequest = new DefaultProjectBuildingRequest();
-        projectRequest.setRepositorySession(repoSession);
-        projectRequest.setSystemProperties(System.getProperties());
-        projectRequest.setLocalRepository(localRepo);
-
-        for (final Artifact artifact : artifacts) {
-            final Set<Artifact> artifactDependencies = new HashSet<>();
-            try {
-                final ProjectBuildingResult projectResult = projectBuilder.build(artifact, projectRequest);
-                gatherArtifacts(projectResult.getProject(), artifactDependencies);
-                getLog().debug("For Artifact " + artifact + ", found the following dependencies:");
-                artifactDependencies.forEach(dep -> getLog().debug(dep.toString()));
-
-                for (final Artifact dependency : artifactDependencies) {
-                    if (dependency.getGroupId().equals(groupId) && dependency.getArtifactId().equals(artifactId)) {
-                        getLog().debug("Found version of " + groupId + ":" + artifactId + " to be " + dependency.getVersion());
-                        return dependency.getVersion();
-                    }
-                }
-            } catch (final Exception e) {
-                getLog().warn("Unable to construct Maven Project for " + artifact + " when attempting to determine the expected version of NiFi API");
-                getLog().debug("Unable to construct Maven Project for " + artifact + " when attempting to determine the expected version of NiFi API", e);
-            }
+    private String resolveProvidedVersion(final String groupId, final String artifactId, final String versionSpec) throws MojoExecutionException {
+        if (versionSpec == null) {
+            throw new MojoExecutionException("Could not determine appropriate version for Provided Artifact " + groupId + ":" + artifactId);
         }
 
-        return null;
-    }
-
-    private Artifact getProvidedArtifact(final String groupId, final String artifactId, final String version) throws MojoExecutionException {
-        final ArtifactHandler handler = artifactHandlerManager.getArtifactHandler("jar");
-
-        final VersionRange versionRange;
-        try {
-            versionRange = VersionRange.createFromVersionSpec(version);
-        } catch (final Exception e) {
-            throw new MojoExecutionException("Could not determine appropriate version for Provided Artifact " + groupId + ":" + artifactId, e);
+        if (!versionSpec.startsWith("[") && !versionSpec.startsWith("(")) {
+            return versionSpec;
         }
 
-        final Artifact artifact = new DefaultArtifact(groupId, artifactId, versionRange, null, "jar", null, handler);
-
-        final ArtifactResolutionRequest request = new ArtifactResolutionRequest();
-        request.setLocalRepository(localRepo);
-        request.setArtifact(artifact);
-
-        final ArtifactResolutionResult result = artifactResolver.resolve(request);
-        if (!result.isSuccess()) {
-            final List<Exception> exceptions = result.getExceptions();
-
-            final MojoExecutionException exception = new MojoExecutionException("Could not resolve local dependency " + artifact);
-            if (exceptions != null) {
-                for (final Exception e : exceptions) {
-                    exception.addSuppressed(e);
-                }
+        final VersionRangeRequest request = new VersionRangeRequest(new DefaultArtifact(groupId, artifactId, "jar", versionSpec), remoteRepositories, null);
+        try {
+            final VersionRangeResult result = repositorySystem.resolveVersionRange(repoSession, request);
+            if (result.getHighestVersion() == null) {
+                throw new MojoExecutionException("Could not determine appropriate version for Provided Artifact " + groupId + ":" + artifactId
+                    + " from version range " + versionSpec);
             }
 
-            throw exception;
-        }
-
-        final Set<Artifact> artifacts = result.getArtifacts();
-        if (artifacts.isEmpty()) {
-            throw new MojoExecutionException("Could not resolve any artifacts for dependency " + artifact);
+            return result.getHighestVersion().toString();
+        } catch (final VersionRangeResolutionException e) {
+            throw new MojoExecutionException("Could not determine appropriate version for Provided Artifact " + groupId + ":" + artifactId, e);
         }
-
-        final List<Artifact> sorted = new ArrayList<>(artifacts);
-        Collections.sort(sorted);
-
-        return sorted.get(0);
     }
 
-    private ExtensionClassLoader createProvidedEntitiesClassLoader(final ArtifactsHolder artifactsHolder)
-            throws MojoExecutionException, ProjectBuildingException {
-
-        final String nifiApiVersion = determineProvidedEntityVersion(artifactsHolder.getAllArtifacts(), "org.apache.nifi", "nifi-api");
+    private String determineNiFiApiVersion(final ArtifactsHolder artifactsHolder, final DeclaredDependencyIndex dependencyIndex) throws MojoExecutionException {
+        final String nifiApiVersion = determineProvidedEntityVersion(artifactsHolder.getAllArtifacts(), dependencyIndex, "org.apache.nifi", "nifi-api");
         if (nifiApiVersion == null) {
             throw new MojoExecutionException("Could not find any dependency, provided or otherwise, on [org.apache.nifi:nifi-api]");
         } else {
             getLog().info("Found a dependency on version " + nifiApiVersion + " of NiFi API");
         }
 
-        final String slf4jApiVersion = determineProvidedEntityVersion(artifactsHolder.getAllArtifacts(),"org.slf4j", "slf4j-api");
+        return resolveProvidedVersion("org.apache.nifi", "nifi-api", nifiApiVersion);
+    }
+
+    private ExtensionClassLoader createProvidedEntitiesClassLoader(final ArtifactsHolder artifactsHolder) throws MojoExecutionException {
 
-        final Artifact nifiApiArtifact = getProvidedArtifact("org.apache.nifi", "nifi-api", nifiApiVersion);
-        final Artifact nifiFrameworkApiArtifact = getProvidedArtifact("org.apache.nifi", "nifi-framework-api", nifiApiArtifact.getVersion());
+        final DeclaredDependencyIndex dependencyIndex = new DeclaredDependencyIndex(artifactsHolder.getAllArtifacts());
 
-        final Artifact slf4jArtifact = getProvidedArtifact("org.slf4j", "slf4j-api", slf4jApiVersion);
+        final String resolvedNiFiApiVersion = determineNiFiApiVersion(artifactsHolder, dependencyIndex);
+        final String slf4jApiVersion = determineProvidedEntityVersion(artifactsHolder.getAllArtifacts(), dependencyIndex, "org.slf4j", "slf4j-api");
 
-        final Set<Artifact> providedArtifacts = new HashSet<>();
-        providedArtifacts.add(nifiApiArtifact);
-        providedArtifacts.add(nifiFrameworkApiArtifact);
-        providedArtifacts.add(slf4jArtifact);
+        // nifi-framework-api always has the same version as nifi-api, so all of the provided entities can be resolved in one batch
+        final String resolvedSlf4jApiVersion = resolveProvidedVersion("org.slf4j", "slf4j-api", slf4jApiVersion);
+
+        final Set<Artifact> providedArtifacts = new LinkedHashSet<>(resolveArtifacts(Arrays.asList(
+            new DefaultArtifact("org.apache.nifi", "nifi-api", "jar", resolvedNiFiApiVersion),
+            new DefaultArtifact("org.apache.nifi", "nifi-framework-api", "jar", resolvedNiFiApiVersion),
+            new DefaultArtifact("org.slf4j", "slf4j-api", "jar", resolvedSlf4jApiVersion))));
 
         getLog().debug("Creating Provided Entities Class Loader with artifacts: " + providedArtifacts);
-        return createClassLoader(providedArtifacts, null, null);
+        return classLoaderPool.acquire(null, providedArtifacts, null, () -> createClassLoader(providedArtifacts, null, null));
     }
 
     private ExtensionClassLoader createClassLoader(final Set<Artifact> artifacts, final ExtensionClassLoader parent, final Artifact narArtifact) throws MojoExecutionException {
-        final Set<URL> urls = new HashSet<>();
+        final List<org.eclipse.aether.artifact.Artifact> unresolvedArtifacts = new ArrayList<>();
         for (final Artifact artifact : artifacts) {
-            final Set<URL> artifactUrls = toURLs(artifact);
-            urls.addAll(artifactUrls);
+            if (artifact.getFile() == null) {
+                getLog().debug("Attempting to resolve Artifact " + artifact + " because it has no File associated with it");
+                unresolvedArtifacts.add(RepositoryUtils.toArtifact(artifact));
+            }
+        }
+
+        // merge in the order of the artifacts, regardless of the order in which they were resolved
+        final Iterator<Artifact> resolvedArtifacts = resolveArtifacts(unresolvedArtifacts).iterator();
+        final Set<URL> urls = new LinkedHashSet<>();
+        for (final Artifact artifact : artifacts) {
+            if (artifact.getFile() == null) {
+                final Artifact resolved = resolvedArtifacts.next();
+                getLog().debug("Resolved Artifact " + artifact + " to " + resolved.getFile());
+                urls.add(toURL(resolved.getFile()));
+            } else {
+                urls.add(toURL(artifact.getFile()));
+            }
         }
 
         getLog().debug("Creating class loader with following dependencies: " + urls);
 
         final URL[] urlArray = urls.toArray(new URL[0]);
+        if (indexClassLoaders) {
+            return createIndexedClassLoader(urlArray, parent, narArtifact, artifacts);
+        }
+
         if (parent == null) {
             return new ExtensionClassLoader(urlArray, narArtifact, artifacts);
         } else {
@@ -273,6 +360,71 @@ public class ExtensionClassLoaderFactory {
         }
     }
 
+    private ExtensionClassLoader createIndexedClassLoader(final URL[] urls, final ExtensionClassLoader parent, final Artifact narArtifact, final Set<Artifact> artifacts)
+            throws MojoExecutionException {
+        final IndexedExtensionClassLoader classLoader;
+        try {
+            classLoader = parent == null
+                ? new IndexedExtensionClassLoader(urls, narArtifact, artifacts)
+                : new IndexedExtensionClassLoader(urls, parent, narArtifact, artifacts);
+        } catch (final IOException e) {
+            throw new MojoExecutionException("Failed to index the contents of " + Arrays.asList(urls), e);
+        }
+
+        for (final Map.Entry<String, List<URL>> splitPackage : classLoader.getSplitPackages().entrySet()) {
+            getLog().debug("Package " + splitPackage.getKey() + " is split across " + splitPackage.getValue() + "; its classes are loaded from the first of these that contains them");
+        }
+
+        return classLoader;
+    }
+
+
+    /**
+     * Resolves the given artifacts through the repository system. The artifacts are split into at most one batch per resolution thread,
+     * each of which is handed to the resolver in a single request.
+     *
+     * @return the resolved artifacts, in the same order as the given artifacts
+     */
+    private List<Artifact> resolveArtifacts(final List<org.eclipse.aether.artifact.Artifact> artifacts) throws MojoExecutionException {
+        if (artifacts.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        final List<ArtifactRequest> requests = new ArrayList<>(artifacts.size());
+        for (final org.eclipse.aether.artifact.Artifact artifact : artifacts) {
+            requests.add(new ArtifactRequest(artifact, remoteRepositories, null));
+        }
+
+        final int batchSize = (requests.size() + resolutionThreads - 1) / Math.max(1, resolutionThreads);
+        final List<Callable<List<ArtifactResult>>> resolutionTasks = new ArrayList<>();
+        for (int i = 0; i < requests.size(); i += batchSize) {
+            final List<ArtifactRequest> batch = requests.subList(i, Math.min(requests.size(), i + batchSize));
+            resolutionTasks.add(() -> {
+                try {
+                    return repositorySystem.resolveArtifacts(repoSession, batch);
+                } catch (final ArtifactResolutionException e) {
+                    throw new MojoExecutionException("Could not resolve dependencies " + artifacts, e);
+                }
+            });
+        }
+
+        final List<List<ArtifactResult>> batchResults;
+        try {
+            batchResults = ParallelTasks.invokeAll(resolutionTasks, resolutionThreads, "Resolve Extension Artifacts");
+        } catch (final MojoExecutionException | RuntimeException e) {
+            throw e;
+        } catch (final Exception e) {
+            throw new MojoExecutionException("Failed to resolve artifacts for the extension ClassLoader", e);
+        }
+
+        final List<Artifact> resolved = new ArrayList<>(artifacts.size());
+        for (final List<ArtifactResult> results : batchResults) {
+            for (final ArtifactResult result : results) {
+                resolved.add(RepositoryUtils.toArtifact(result.getArtifact()));
+            }
+        }
+        return resolved;
+    }
 
     private void gatherArtifacts(final MavenProject mavenProject, final Set<Artifact> artifacts) throws MojoExecutionException {
         final DependencyNodeVisitor nodeVisitor = new DependencyNodeVisitor() {
@@ -305,38 +457,14 @@ public class ExtensionClassLoaderFactory {
 
 
 
-    private Set<URL> toURLs(final Artifact artifact) throws MojoExecutionException {
-        final Set<URL> urls = new HashSet<>();
-
-        final File artifactFile = artifact.getFile();
-        if (artifactFile == null) {
-            getLog().debug("Attempting to resolve Artifact " + artifact + " because it has no File associated with it");
-
-            final ArtifactResolutionRequest request = new ArtifactResolutionRequest();
-            request.setLocalRepository(localRepo);
-            request.setArtifact(artifact);
-
-            final ArtifactResolutionResult result = artifactResolver.resolve(request);
-            if (!result.isSuccess()) {
-                throw new MojoExecutionException("Could not resolve local dependency " + artifact);
-            }
-
-            getLog().debug("Resolved Artifact " + artifact + " to " + result.getArtifacts());
-
-            for (final Artifact resolved : result.getArtifacts()) {
-                urls.addAll(toURLs(resolved));
-            }
-        } else {
-            try {
-                final URL url = artifact.getFile().toURI().toURL();
-                getLog().debug("Adding URL " + url + " to ClassLoader");
-                urls.add(url);
-            } catch (final MalformedURLException mue) {
-                throw new MojoExecutionException("Failed to convert File " + artifact.getFile() + " into URL", mue);
-            }
+    private URL toURL(final File file) throws MojoExecutionException {
+        try {
+            final URL url = file.toURI().toURL();
+            getLog().debug("Adding URL " + url + " to ClassLoader");
+            return url;
+        } catch (final MalformedURLException mue) {
+            throw new MojoExecutionException("Failed to convert File " + file + " into URL", mue);
         }
-
-        return urls;
     }
 
 
@@ -346,10 +474,15 @@ public class ExtensionClassLoaderFactory {
         private MavenProject project;
         private ArtifactRepository localRepo;
         private DependencyGraphBuilder dependencyGraphBuilder;
-        private ArtifactResolver artifactResolver;
+        private RepositorySystem repositorySystem;
+        private List<RemoteRepository> remoteRepositories;
         private ProjectBuilder projectBuilder;
         private RepositorySystemSession repositorySession;
-        private ArtifactHandlerManager artifactHandlerManager;
+        private int resolutionThreads = 1;
+        private File dependencyCacheDirectory;
+        private ModelBuilder modelBuilder;
+        private boolean indexClassLoaders;
+        private boolean readNarDescriptors;
 
         public Builder log(final Log log) {
             this.log = log;
@@ -376,8 +509,13 @@ public class ExtensionClassLoaderFactory {
             return this;
         }
 
-        public Builder artifactResolver(final ArtifactResolver resolver) {
-            this.artifactResolver = resolver;
+        public Builder repositorySystem(final RepositorySystem repositorySystem) {
+            this.repositorySystem = repositorySystem;
+            return this;
+        }
+
+        public Builder remoteRepositories(final List<RemoteRepository> remoteRepositories) {
+            this.remoteRepositories = remoteRepositories;
             return this;
         }
 
@@ -386,8 +524,42 @@ public class ExtensionClassLoaderFactory {
             return this;
         }
 
-        public Builder artifactHandlerManager(final ArtifactHandlerManager artifactHandlerManager) {
-            this.artifactHandlerManager = artifactHandlerManager;
+        public Builder resolutionThreads(final int resolutionThreads) {
+            this.resolutionThreads = resolutionThreads;
+            return this;
+        }
+
+        /**
+         * Enables the persistent cache of the dependencies of parent NARs, which is kept in the given directory between builds.
+         */
+        public Builder dependencyCacheDirectory(final File dependencyCacheDirectory) {
+            this.dependencyCacheDirectory = dependencyCacheDirectory;
+            return this;
+        }
+
+        /**
+         * The {@link ModelBuilder} used to determine the POMs that the cached dependencies of snapshots are derived from. Without it,
+         * the persistent dependency cache only holds released NARs whose dependencies are all released.
+         */
+        public Builder modelBuilder(final ModelBuilder modelBuilder) {
+            this.modelBuilder = modelBuilder;
+            return this;
+        }
+
+        /**
+         * Whether {@link IndexedExtensionClassLoader}s should be created, which look up classes and resources through an index of the
+         * packages in their jars instead of searching each jar in turn.
+         */
+        public Builder indexClassLoaders(final boolean indexClassLoaders) {
+            this.indexClassLoaders = indexClassLoaders;
+            return this;
+        }
+
+        /**
+         * Whether the dependencies of parent NARs should be read from the descriptors that were published with them, if there are any.
+         */
+        public Builder readNarDescriptors(final boolean readNarDescriptors) {
+            this.readNarDescriptors = readNarDescriptors;
             return this;
         }
 
@@ -396,6 +568,96 @@ public class ExtensionClassLoaderFactory {
         }
     }
 
+    /**
+     * An index of the dependencies that artifacts declare in their POMs, such as provided dependencies on the NiFi API, which do not
+     * appear in the dependency graph of the NAR. The index is built when it is created, by a single collection of a graph whose first level holds the
+     * artifacts and whose second level holds the dependencies that each artifact declares, in any scope other than test, and it answers
+     * every lookup. As when the artifacts were searched one by one, the first artifact that declares a dependency determines its version.
+     */
+    private class DeclaredDependencyIndex {
+        private final Map<String, String> versions = new HashMap<>();
+
+        DeclaredDependencyIndex(final Set<Artifact> artifacts) {
+            index(artifacts);
+        }
+
+        String findVersion(final String groupId, final String artifactId) {
+            final String coordinates = groupId + ":" + artifactId;
+            final String version = versions.get(coordinates);
+            if (version != null) {
+                getLog().debug("Found version of " + coordinates + " to be " + version);
+            }
+            return version;
+        }
+
+        private void index(final Set<Artifact> artifacts) {
+            final List<org.eclipse.aether.graph.Dependency> dependencies = new ArrayList<>();
+            for (final Artifact artifact : artifacts) {
+                dependencies.add(new org.eclipse.aether.graph.Dependency(RepositoryUtils.toArtifact(artifact), "compile"));
+            }
+
+            // the declared versions are wanted as they are, so neither dependency management nor conflict resolution is applied
+            final DefaultRepositorySystemSession indexSession = new DefaultRepositorySystemSession(repoSession);
+            indexSession.setDependencySelector(new DeclaredDependencySelector(0));
+            indexSession.setDependencyManager(null);
+            indexSession.setDependencyGraphTransformer(null);
+
+            final CollectRequest collectRequest = new CollectRequest(dependencies, null, remoteRepositories);
+            org.eclipse.aether.graph.DependencyNode root;
+            try {
+                root = repositorySystem.collectDependencies(indexSession, collectRequest).getRoot();
+            } catch (final DependencyCollectionException e) {
+                getLog().warn("Unable to read the declared dependencies of every artifact when attempting to determine the expected version of NiFi API");
+                getLog().debug("Unable to read the declared dependencies of every artifact when attempting to determine the expected version of NiFi API", e);
+                root = e.getResult().getRoot();
+            }
+
+            if (root == null) {
+                return;
+            }
+
+            for (final org.eclipse.aether.graph.DependencyNode artifactNode : root.getChildren()) {
+                getLog().debug("For Artifact " + artifactNode.getArtifact() + ", found the following dependencies:");
+                for (final org.eclipse.aether.graph.DependencyNode declaredNode : artifactNode.getChildren()) {
+                    final org.eclipse.aether.artifact.Artifact declared = declaredNode.getArtifact();
+                    getLog().debug(declaredNode.getDependency().toString());
+                    versions.putIfAbsent(declared.getGroupId() + ":" + declared.getArtifactId(), declared.getVersion());
+                }
+            }
+        }
+    }
+
+    /**
+     * Selects the artifacts themselves and the dependencies they declare, other than test dependencies, but nothing below them.
+     */
+    private static class DeclaredDependencySelector implements DependencySelector {
+        private final int depth;
+
+        DeclaredDependencySelector(final int depth) {
+            this.depth = depth;
+        }
+
+        @Override
+        public boolean selectDependency(final org.eclipse.aether.graph.Dependency dependency) {
+            return depth == 1 || (depth == 2 && !"test".equals(dependency.getScope()));
+        }
+
+        @Override
+        public DependencySelector deriveChildSelector(final DependencyCollectionContext context) {
+            return depth > 2 ? this : new DeclaredDependencySelector(depth + 1);
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            return obj instanceof DeclaredDependencySelector && ((DeclaredDependencySelector) obj).depth == depth;
+        }
+
+        @Override
+        public int hashCode() {
+            return depth;
+        }
+    }
+
     private static class ArtifactsHolder {
 
         private Set<Artifact> allArtifacts = new TreeSet<>();
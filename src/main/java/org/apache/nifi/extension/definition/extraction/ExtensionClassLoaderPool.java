@@ -0,0 +1,250 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.extension.definition.extraction;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.SessionData;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Shares the parent ClassLoaders of NARs, such as the ClassLoaders of parent NARs and of the provided NiFi APIs, between all of the
+ * modules of a Maven session, so that the classes they contain are defined only once. ClassLoaders are keyed by their artifacts and
+ * their parent, and are reference counted; a ClassLoader is closed as soon as the last module that uses it releases it. ClassLoaders
+ * are created outside of the pool's lock, so that modules only wait for one another when they need the same ClassLoader.
+ * <p>
+ * Since ClassLoaders are not kept once they are released, they are only shared between modules that are built at the same time, as in
+ * a parallel (<code>-T</code>) build. In a sequential build every module creates its own ClassLoaders, just as without the pool.
+ * </p>
+ */
+public class ExtensionClassLoaderPool {
+    private static final Object SESSION_DATA_KEY = ExtensionClassLoaderPool.class.getName();
+    private static final Object INDEXED_SESSION_DATA_KEY = ExtensionClassLoaderPool.class.getName() + ".indexed";
+
+    private final Map<String, PooledClassLoader> classLoadersByKey = new HashMap<>();
+    private final Map<ExtensionClassLoader, PooledClassLoader> pooledClassLoaders = new IdentityHashMap<>();
+
+    /**
+     * Returns the pool for the given session, creating it if this is the first time it is requested. Indexed and plain ClassLoaders are
+     * kept in separate pools, so that modules that are configured differently never share ClassLoaders.
+     *
+     * @param repositorySession the session to get the pool for, may be <code>null</code>
+     * @param indexed whether the pool holds {@link IndexedExtensionClassLoader}s
+     * @return the pool for the session, or a new pool that is not shared if there is no session
+     */
+    public static ExtensionClassLoaderPool getInstance(final RepositorySystemSession repositorySession, final boolean indexed) {
+        if (repositorySession == null || repositorySession.getData() == null) {
+            return new ExtensionClassLoaderPool();
+        }
+
+        final Object sessionDataKey = indexed ? INDEXED_SESSION_DATA_KEY : SESSION_DATA_KEY;
+        final SessionData sessionData = repositorySession.getData();
+        while (true) {
+            final Object existing = sessionData.get(sessionDataKey);
+            if (existing instanceof ExtensionClassLoaderPool) {
+                return (ExtensionClassLoaderPool) existing;
+            }
+
+            final ExtensionClassLoaderPool pool = new ExtensionClassLoaderPool();
+            if (sessionData.set(sessionDataKey, existing, pool)) {
+                return pool;
+            }
+        }
+    }
+
+    /**
+     * Returns the pooled ClassLoader for the given artifacts and parent, creating it if it does not exist yet. If another module is
+     * creating the same ClassLoader, this waits for it to be created. The caller's reference to the parent is handed over to the pool,
+     * and the caller must {@link #release(ExtensionClassLoader) release} the returned ClassLoader once it is no longer needed.
+     *
+     * @param narArtifact the NAR that the ClassLoader is for, may be <code>null</code>
+     * @param artifacts the artifacts whose classes the ClassLoader loads
+     * @param parent the parent of the ClassLoader, which must have been acquired from this pool, may be <code>null</code>
+     * @param creator creates the ClassLoader if it is not pooled yet
+     * @return the pooled ClassLoader
+     * @throws MojoExecutionException if the ClassLoader cannot be created
+     */
+    public ExtensionClassLoader acquire(final Artifact narArtifact, final Collection<Artifact> artifacts, final ExtensionClassLoader parent,
+                                        final ClassLoaderCreator creator) throws MojoExecutionException {
+        final PooledClassLoader pooled;
+        final boolean create;
+        synchronized (this) {
+            final String key = getKey(narArtifact, artifacts, parent);
+
+            final PooledClassLoader existing = classLoadersByKey.get(key);
+            if (existing == null) {
+                pooled = new PooledClassLoader(key, parent);
+                classLoadersByKey.put(key, pooled);
+                create = true;
+            } else {
+                pooled = existing;
+                create = false;
+            }
+
+            pooled.references++;
+        }
+
+        if (!create) {
+            // the pooled ClassLoader already holds its own reference to the parent
+            release(parent);
+            return awaitClassLoader(pooled);
+        }
+
+        final ExtensionClassLoader classLoader;
+        try {
+            classLoader = creator.create();
+        } catch (final MojoExecutionException | RuntimeException e) {
+            synchronized (this) {
+                classLoadersByKey.remove(pooled.key);
+            }
+            pooled.classLoaderFuture.completeExceptionally(e);
+            release(parent);
+            throw e;
+        }
+
+        synchronized (this) {
+            pooled.classLoader = classLoader;
+            pooledClassLoaders.put(classLoader, pooled);
+        }
+        pooled.classLoaderFuture.complete(classLoader);
+        return classLoader;
+    }
+
+    private ExtensionClassLoader awaitClassLoader(final PooledClassLoader pooled) throws MojoExecutionException {
+        try {
+            return pooled.classLoaderFuture.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abandon(pooled);
+            throw new MojoExecutionException("Interrupted while waiting for the ClassLoader " + pooled.key + " to be created", e);
+        } catch (final ExecutionException e) {
+            abandon(pooled);
+            throw new MojoExecutionException("Failed to create the ClassLoader " + pooled.key, e.getCause());
+        }
+    }
+
+    /**
+     * Gives up a reference to a ClassLoader that was never handed out, because it could not be created or waiting for it was interrupted.
+     * If the ClassLoader was created in the meantime and this was its last reference, it is closed.
+     */
+    private void abandon(final PooledClassLoader pooled) {
+        final ExtensionClassLoader classLoader;
+        synchronized (this) {
+            pooled.references--;
+            if (pooled.references > 0 || pooled.classLoader == null) {
+                return;
+            }
+
+            classLoader = pooled.classLoader;
+            classLoadersByKey.remove(pooled.key);
+            pooledClassLoaders.remove(classLoader);
+        }
+
+        close(classLoader);
+        release(pooled.parent);
+    }
+
+    /**
+     * Releases a reference to a ClassLoader. A ClassLoader is closed, and its reference to its parent released, once no references to
+     * it remain or right away if it is not pooled.
+     *
+     * @param classLoader the ClassLoader to release, may be <code>null</code>
+     */
+    public void release(final ExtensionClassLoader classLoader) {
+        if (classLoader == null) {
+            return;
+        }
+
+        final ExtensionClassLoader parent;
+        synchronized (this) {
+            final PooledClassLoader pooled = pooledClassLoaders.get(classLoader);
+            if (pooled == null) {
+                parent = classLoader.getParent() instanceof ExtensionClassLoader ? (ExtensionClassLoader) classLoader.getParent() : null;
+            } else {
+                pooled.references--;
+                if (pooled.references > 0) {
+                    return;
+                }
+
+                classLoadersByKey.remove(pooled.key);
+                pooledClassLoaders.remove(classLoader);
+                parent = pooled.parent;
+            }
+        }
+
+        close(classLoader);
+        release(parent);
+    }
+
+    private String getKey(final Artifact narArtifact, final Collection<Artifact> artifacts, final ExtensionClassLoader parent) {
+        final StringBuilder sb = new StringBuilder();
+        if (parent != null) {
+            final PooledClassLoader pooledParent = pooledClassLoaders.get(parent);
+            if (pooledParent == null) {
+                throw new IllegalArgumentException("The parent ClassLoader " + parent + " was not acquired from this pool");
+            }
+            sb.append(pooledParent.key).append(" -> ");
+        }
+
+        sb.append(narArtifact == null ? "" : narArtifact.getId());
+
+        final Collection<String> artifactIds = new TreeSet<>();
+        for (final Artifact artifact : artifacts) {
+            artifactIds.add(artifact.getId());
+        }
+        sb.append(artifactIds);
+
+        return sb.toString();
+    }
+
+    private void close(final ExtensionClassLoader classLoader) {
+        try {
+            classLoader.close();
+        } catch (final IOException ignored) {
+            // the jars are only read, so failing to close one of them cannot lose any data
+        }
+    }
+
+    /**
+     * Creates a ClassLoader that is not pooled yet.
+     */
+    public interface ClassLoaderCreator {
+        ExtensionClassLoader create() throws MojoExecutionException;
+    }
+
+    private static class PooledClassLoader {
+        private final String key;
+        private final ExtensionClassLoader parent;
+        private final CompletableFuture<ExtensionClassLoader> classLoaderFuture = new CompletableFuture<>();
+        private ExtensionClassLoader classLoader;
+        private int references;
+
+        PooledClassLoader(final String key, final ExtensionClassLoader parent) {
+            this.key = key;
+            this.parent = parent;
+        }
+    }
+}
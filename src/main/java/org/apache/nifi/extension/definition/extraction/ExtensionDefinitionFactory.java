@@ -22,38 +22,103 @@ import org.apache.nifi.extension.definition.ExtensionType;
 import org.apache.nifi.extension.definition.ServiceAPIDefinition;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 public class ExtensionDefinitionFactory {
     private static final String SERVICES_DIRECTORY = "META-INF/services/";
+    private static final String CONTROLLER_SERVICE_INTERFACE_NAME = "org.apache.nifi.controller.ControllerService";
 
     private static final Map<ExtensionType, String> INTERFACE_NAMES = new HashMap<>();
     static {
         INTERFACE_NAMES.put(ExtensionType.PROCESSOR, "org.apache.nifi.processor.Processor");
-        INTERFACE_NAMES.put(ExtensionType.CONTROLLER_SERVICE, "org.apache.nifi.controller.ControllerService");
+        INTERFACE_NAMES.put(ExtensionType.CONTROLLER_SERVICE, CONTROLLER_SERVICE_INTERFACE_NAME);
         INTERFACE_NAMES.put(ExtensionType.REPORTING_TASK, "org.apache.nifi.reporting.ReportingTask");
     }
 
     private final ClassLoader extensionClassLoader;
+    private final ClassFileHierarchy classFileHierarchy;
 
     public ExtensionDefinitionFactory(final ClassLoader classLoader) {
+        this(classLoader, false);
+    }
+
+    /**
+     * @param classLoader the ClassLoader of the NAR whose extensions are discovered
+     * @param readClassFiles whether the type hierarchy of the extensions should be read from their class files rather than by loading the
+     * classes, which avoids loading and linking the extensions' dependencies, and so cannot fail on linkage errors in optional dependencies
+     */
+    public ExtensionDefinitionFactory(final ClassLoader classLoader, final boolean readClassFiles) {
         this.extensionClassLoader = classLoader;
+        this.classFileHierarchy = readClassFiles ? new ClassFileHierarchy(classLoader) : null;
     }
 
     public Set<ExtensionDefinition> discoverExtensions(final ExtensionType extensionType) throws IOException {
         final String interfaceName = INTERFACE_NAMES.get(extensionType);
         final Set<String> classNames = discoverClassNames(interfaceName);
+        return createExtensionDefinitions(extensionType, classNames);
+    }
+
+    /**
+     * Discovers the extensions of every type that are registered in the ClassLoader's own jars, reading the service registrations of
+     * each jar only once. Unlike {@link #discoverExtensions(ExtensionType)}, the registrations in the jars of parent ClassLoaders are not
+     * included. Supporting another type of extension only requires its interface to be added to the known interface names. If the
+     * ClassLoader is not a {@link URLClassLoader}, its jars cannot be listed, and each type is discovered separately instead.
+     *
+     * @return the definitions of the discovered extensions, keyed by type, with an empty set for types that have no extensions
+     * @throws IOException if the service registrations cannot be read or an extension definition cannot be created
+     */
+    public Map<ExtensionType, Set<ExtensionDefinition>> discoverExtensions() throws IOException {
+        final Map<ExtensionType, Set<ExtensionDefinition>> definitions = new EnumMap<>(ExtensionType.class);
+
+        if (!(extensionClassLoader instanceof URLClassLoader)) {
+            for (final ExtensionType extensionType : INTERFACE_NAMES.keySet()) {
+                definitions.put(extensionType, discoverExtensions(extensionType));
+            }
+            return definitions;
+        }
+
+        final ServiceRegistrationScanner registrationScanner = new ServiceRegistrationScanner(ServiceRegistrationScanner.NIFI_SERVICE_PREFIX);
+        final Map<String, Set<String>> registrations = new HashMap<>();
+        for (final URL url : ((URLClassLoader) extensionClassLoader).getURLs()) {
+            if (!"file".equals(url.getProtocol())) {
+                continue;
+            }
+
+            final File file;
+            try {
+                file = new File(url.toURI());
+            } catch (final URISyntaxException e) {
+                throw new IOException("Cannot read service registrations from " + url, e);
+            }
+
+            registrationScanner.scan(file).forEach((serviceName, classNames) -> registrations.computeIfAbsent(serviceName, name -> new HashSet<>()).addAll(classNames));
+        }
+
+        for (final Map.Entry<ExtensionType, String> entry : INTERFACE_NAMES.entrySet()) {
+            final Set<String> classNames = registrations.getOrDefault(entry.getValue(), Collections.emptySet());
+            definitions.put(entry.getKey(), createExtensionDefinitions(entry.getKey(), classNames));
+        }
+
+        return definitions;
+    }
 
+    private Set<ExtensionDefinition> createExtensionDefinitions(final ExtensionType extensionType, final Set<String> classNames) throws IOException {
         if (classNames.isEmpty()) {
             return Collections.emptySet();
         }
@@ -70,7 +135,16 @@ public class ExtensionDefinitionFactory {
         return definitions;
     }
 
-    private ExtensionDefinition createExtensionDefinition(final ExtensionType extensionType, final String className) throws ClassNotFoundException {
+    private ExtensionDefinition createExtensionDefinition(final ExtensionType extensionType, final String className) throws ClassNotFoundException, IOException {
+        if (classFileHierarchy != null) {
+            if (classFileHierarchy.getClassFile(className) == null) {
+                throw new ClassNotFoundException(className);
+            }
+
+            final Set<ServiceAPIDefinition> serviceApis = extensionType == ExtensionType.CONTROLLER_SERVICE ? getProvidedServiceAPIs(className) : Collections.emptySet();
+            return new StandardExtensionDefinition(extensionType, className, serviceApis);
+        }
+
         final Class<?> extensionClass = Class.forName(className, false, extensionClassLoader);
         final Set<ServiceAPIDefinition> serviceApis = getProvidedServiceAPIs(extensionType, extensionClass);
         return new StandardExtensionDefinition(extensionType, className, serviceApis);
@@ -82,7 +156,7 @@ public class ExtensionDefinitionFactory {
         }
 
         final Set<ServiceAPIDefinition> serviceApis = new HashSet<>();
-        final Class<?> controllerServiceClass = Class.forName("org.apache.nifi.controller.ControllerService", false, extensionClassLoader);
+        final Class<?> controllerServiceClass = Class.forName(CONTROLLER_SERVICE_INTERFACE_NAME, false, extensionClassLoader);
         addProvidedServiceAPIs(controllerServiceClass, extensionClass, serviceApis);
         return serviceApis;
     }
@@ -108,6 +182,45 @@ public class ExtensionDefinitionFactory {
         }
     }
 
+    /**
+     * Determines the service APIs that an extension provides from the class files of the extension, its superclasses and their
+     * interfaces, in the same way as {@link #addProvidedServiceAPIs(Class, Class, Set)} does from the loaded classes. Types whose class
+     * files cannot be found, such as those of missing optional dependencies, are skipped instead of failing the discovery.
+     */
+    private Set<ServiceAPIDefinition> getProvidedServiceAPIs(final String className) throws IOException {
+        final Set<ServiceAPIDefinition> serviceApis = new HashSet<>();
+
+        String currentClassName = className;
+        while (currentClassName != null) {
+            final ClassFileHierarchy.ClassFile classFile = classFileHierarchy.getClassFile(currentClassName);
+            if (classFile == null) {
+                break;
+            }
+
+            for (final String immediateInterface : classFile.getInterfaces()) {
+                final List<String> interfaceHierarchy = new ArrayList<>();
+                classFileHierarchy.addInterfaceHierarchy(immediateInterface, interfaceHierarchy);
+
+                for (final String implementedInterface : interfaceHierarchy) {
+                    if (CONTROLLER_SERVICE_INTERFACE_NAME.equals(implementedInterface)
+                            || !classFileHierarchy.isAssignableTo(implementedInterface, CONTROLLER_SERVICE_INTERFACE_NAME)) {
+                        continue;
+                    }
+
+                    final Artifact interfaceNarArtifact = classFileHierarchy.getDefiningNar(implementedInterface);
+                    if (interfaceNarArtifact != null) {
+                        serviceApis.add(new StandardServiceAPIDefinition(implementedInterface, interfaceNarArtifact.getGroupId(),
+                            interfaceNarArtifact.getArtifactId(), interfaceNarArtifact.getBaseVersion()));
+                    }
+                }
+            }
+
+            currentClassName = classFile.getSuperclassName();
+        }
+
+        return serviceApis;
+    }
+
     private void getInterfaceHierarchy(final Class<?> implementedInterface, final Set<Class<?>> interfaceHierarchy) {
         final Class<?>[] parentInterfaces = implementedInterface.getInterfaces();
         if (parentInterfaces == null) {
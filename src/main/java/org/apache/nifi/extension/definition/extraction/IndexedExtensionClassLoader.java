@@ -0,0 +1,333 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.extension.definition.extraction;
+
+import org.apache.maven.artifact.Artifact;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.CodeSigner;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+
+/**
+ * An {@link ExtensionClassLoader} that indexes the directories of its jars and class directories when it is created, so that classes
+ * and resources are looked up only in the jars that contain their package rather than by probing every jar in turn. Jars are indexed
+ * from their central directory, without reading any of their entries. When several jars contain the same package, the jars are searched
+ * in the order of the ClassLoader's URLs, just as by a {@link java.net.URLClassLoader}; such split packages are reported by
+ * {@link #getSplitPackages()}.
+ */
+public class IndexedExtensionClassLoader extends ExtensionClassLoader {
+    static {
+        ClassLoader.registerAsParallelCapable();
+    }
+
+    private final Map<String, List<IndexedSource>> sourcesByDirectory = new HashMap<>();
+    private final Map<String, List<URL>> splitPackages = new LinkedHashMap<>();
+    private final List<IndexedSource> sources = new ArrayList<>();
+    private boolean unindexedUrls;
+
+    public IndexedExtensionClassLoader(final URL[] urls, final ClassLoader parent, final Artifact narArtifact, final Collection<Artifact> otherArtifacts) throws IOException {
+        super(urls, parent, narArtifact, otherArtifacts);
+        buildIndex(urls);
+    }
+
+    public IndexedExtensionClassLoader(final URL[] urls, final Artifact narArtifact, final Collection<Artifact> otherArtifacts) throws IOException {
+        super(urls, narArtifact, otherArtifacts);
+        buildIndex(urls);
+    }
+
+    /**
+     * @return the packages that contain classes in more than one of the ClassLoader's URLs, with the URLs in the order they are searched
+     */
+    public Map<String, List<URL>> getSplitPackages() {
+        return Collections.unmodifiableMap(splitPackages);
+    }
+
+    private void buildIndex(final URL[] urls) throws IOException {
+        final Map<String, List<URL>> classPackageUrls = new HashMap<>();
+
+        try {
+            for (final URL url : urls) {
+                final File file = toFile(url);
+                if (file == null || !file.exists()) {
+                    unindexedUrls = true;
+                    continue;
+                }
+
+                final IndexedSource source = file.isDirectory() ? new IndexedSource(url, file, null) : new IndexedSource(url, file, new JarFile(file));
+                sources.add(source);
+
+                for (final String entryName : source.getEntryNames()) {
+                    final String directory = getDirectory(entryName);
+                    final List<IndexedSource> directorySources = sourcesByDirectory.computeIfAbsent(directory, key -> new ArrayList<>(1));
+                    if (directorySources.isEmpty() || directorySources.get(directorySources.size() - 1) != source) {
+                        directorySources.add(source);
+                    }
+
+                    if (entryName.endsWith(".class")) {
+                        final List<URL> packageUrls = classPackageUrls.computeIfAbsent(directory, key -> new ArrayList<>(1));
+                        if (packageUrls.isEmpty() || packageUrls.get(packageUrls.size() - 1) != url) {
+                            packageUrls.add(url);
+                        }
+                    }
+                }
+            }
+        } catch (final IOException | RuntimeException e) {
+            closeSources();
+            throw e;
+        }
+
+        classPackageUrls.entrySet().stream()
+            .filter(entry -> entry.getValue().size() > 1)
+            .sorted(Map.Entry.comparingByKey())
+            .forEach(entry -> splitPackages.put(entry.getKey().replace('/', '.'), entry.getValue()));
+    }
+
+    private static File toFile(final URL url) {
+        if (!"file".equals(url.getProtocol())) {
+            return null;
+        }
+
+        try {
+            return new File(url.toURI());
+        } catch (final URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static String getDirectory(final String resourceName) {
+        final String name = resourceName.endsWith("/") ? resourceName.substring(0, resourceName.length() - 1) : resourceName;
+        final int lastSlash = name.lastIndexOf('/');
+        return lastSlash < 0 ? "" : name.substring(0, lastSlash);
+    }
+
+    private List<IndexedSource> getCandidates(final String resourceName) {
+        final List<IndexedSource> candidates = sourcesByDirectory.get(getDirectory(resourceName));
+        return candidates == null ? Collections.emptyList() : candidates;
+    }
+
+    @Override
+    protected Class<?> findClass(final String name) throws ClassNotFoundException {
+        final String resourceName = name.replace('.', '/') + ".class";
+        for (final IndexedSource source : getCandidates(resourceName)) {
+            if (!source.contains(resourceName)) {
+                continue;
+            }
+
+            try {
+                return defineClass(name, resourceName, source);
+            } catch (final IOException e) {
+                throw new ClassNotFoundException(name, e);
+            }
+        }
+
+        if (unindexedUrls) {
+            return super.findClass(name);
+        }
+
+        throw new ClassNotFoundException(name);
+    }
+
+    private Class<?> defineClass(final String name, final String resourceName, final IndexedSource source) throws IOException {
+        final int lastDot = name.lastIndexOf('.');
+        if (lastDot > 0) {
+            final String packageName = name.substring(0, lastDot);
+            if (getPackage(packageName) == null) {
+                try {
+                    final Manifest manifest = source.getManifest();
+                    if (manifest == null) {
+                        definePackage(packageName, null, null, null, null, null, null, null);
+                    } else {
+                        definePackage(packageName, manifest, source.url);
+                    }
+                } catch (final IllegalArgumentException e) {
+                    // the package was defined concurrently by another thread
+                }
+            }
+        }
+
+        final byte[] bytes = source.read(resourceName);
+        final Class<?> definedClass = defineClass(name, bytes, 0, bytes.length, new CodeSource(source.url, (CodeSigner[]) null));
+        countDefinedClass();
+        return definedClass;
+    }
+
+    @Override
+    public URL findResource(final String name) {
+        for (final IndexedSource source : getCandidates(name)) {
+            if (source.contains(name)) {
+                return source.getResourceUrl(name);
+            }
+        }
+
+        return unindexedUrls ? super.findResource(name) : null;
+    }
+
+    @Override
+    public Enumeration<URL> findResources(final String name) throws IOException {
+        final List<URL> resources = new ArrayList<>();
+        for (final IndexedSource source : getCandidates(name)) {
+            final URL resource = source.contains(name) ? source.getResourceUrl(name) : null;
+            if (resource != null) {
+                resources.add(resource);
+            }
+        }
+
+        if (unindexedUrls) {
+            // indexed URLs are found again by the URLClassLoader, so only the resources of the URLs that could not be indexed are added
+            final Enumeration<URL> unindexed = super.findResources(name);
+            while (unindexed.hasMoreElements()) {
+                final URL resource = unindexed.nextElement();
+                if (!resources.contains(resource)) {
+                    resources.add(resource);
+                }
+            }
+        }
+
+        return Collections.enumeration(resources);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            closeSources();
+        } finally {
+            super.close();
+        }
+    }
+
+    private void closeSources() {
+        for (final IndexedSource source : sources) {
+            source.close();
+        }
+    }
+
+    /**
+     * A jar file or a classes directory in the index.
+     */
+    private static class IndexedSource {
+        private final URL url;
+        private final File file;
+        private final JarFile jarFile;
+
+        IndexedSource(final URL url, final File file, final JarFile jarFile) {
+            this.url = url;
+            this.file = file;
+            this.jarFile = jarFile;
+        }
+
+        List<String> getEntryNames() throws IOException {
+            final List<String> entryNames = new ArrayList<>();
+            if (jarFile != null) {
+                for (final Enumeration<JarEntry> entries = jarFile.entries(); entries.hasMoreElements();) {
+                    entryNames.add(entries.nextElement().getName());
+                }
+            } else {
+                final Path root = file.toPath();
+                try (final Stream<Path> paths = Files.walk(root)) {
+                    paths.filter(path -> !path.equals(root))
+                        .forEach(path -> entryNames.add(root.relativize(path).toString().replace(File.separatorChar, '/') + (Files.isDirectory(path) ? "/" : "")));
+                }
+            }
+            return entryNames;
+        }
+
+        boolean contains(final String name) {
+            if (jarFile != null) {
+                return jarFile.getEntry(name) != null;
+            }
+            return new File(file, name).exists();
+        }
+
+        Manifest getManifest() throws IOException {
+            return jarFile == null ? null : jarFile.getManifest();
+        }
+
+        byte[] read(final String name) throws IOException {
+            try (final InputStream in = jarFile == null ? Files.newInputStream(new File(file, name).toPath()) : jarFile.getInputStream(jarFile.getEntry(name))) {
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                final byte[] buffer = new byte[8192];
+                int len;
+                while ((len = in.read(buffer)) > 0) {
+                    out.write(buffer, 0, len);
+                }
+                return out.toByteArray();
+            }
+        }
+
+        URL getResourceUrl(final String name) {
+            try {
+                if (jarFile != null) {
+                    return new URL("jar:" + url + "!/" + encodeEntryName(name));
+                }
+                return new File(file, name).toURI().toURL();
+            } catch (final MalformedURLException e) {
+                return null;
+            }
+        }
+
+        /**
+         * Percent-encodes the name of a jar entry for use in a URL, in the same way as the URLs that a URLClassLoader returns, so that
+         * entry names with spaces, non-ASCII characters or characters such as <code>#</code> and <code>%</code> still resolve, and so
+         * that the URLs of resources that are also found through the URLClassLoader compare as equal.
+         */
+        static String encodeEntryName(final String name) {
+            final StringBuilder sb = new StringBuilder(name.length());
+            for (final byte b : name.getBytes(StandardCharsets.UTF_8)) {
+                final int c = b & 0xFF;
+                if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || "/-_.!~*'()$&+,;=:@".indexOf(c) >= 0) {
+                    sb.append((char) c);
+                } else {
+                    sb.append('%').append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 0xF, 16));
+                }
+            }
+            return sb.toString();
+        }
+
+        void close() {
+            if (jarFile == null) {
+                return;
+            }
+
+            try {
+                jarFile.close();
+            } catch (final IOException ignored) {
+                // the jar is only read, so failing to close it cannot lose any data
+            }
+        }
+    }
+}
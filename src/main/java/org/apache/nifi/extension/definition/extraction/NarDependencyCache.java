@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.extension.definition.extraction;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.project.ProjectBuildingException;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.SessionData;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Holds the dependency sets of the NARs that have been resolved during a Maven session, so that a NAR that is the
+ * parent of many modules in a reactor is only resolved once. The cache is shared by all modules and threads of the session.
+ */
+public class NarDependencyCache {
+    private static final Object SESSION_DATA_KEY = NarDependencyCache.class.getName();
+
+    private final ConcurrentMap<String, FutureTask<Set<Artifact>>> resolvedNars = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the cache for the given session, creating it if this is the first time it is requested.
+     *
+     * @param repositorySession the session to get the cache for, may be <code>null</code>
+     * @return the cache for the session, or a new cache that is not shared if there is no session
+     */
+    public static NarDependencyCache getInstance(final RepositorySystemSession repositorySession) {
+        if (repositorySession == null || repositorySession.getData() == null) {
+            return new NarDependencyCache();
+        }
+
+        final SessionData sessionData = repositorySession.getData();
+        while (true) {
+            final Object existing = sessionData.get(SESSION_DATA_KEY);
+            if (existing instanceof NarDependencyCache) {
+                return (NarDependencyCache) existing;
+            }
+
+            final NarDependencyCache cache = new NarDependencyCache();
+            if (sessionData.set(SESSION_DATA_KEY, existing, cache)) {
+                return cache;
+            }
+        }
+    }
+
+    /**
+     * Returns every artifact in the dependency graph of the given NAR, resolving it with the given resolver if no other module or thread
+     * has done so yet. Concurrent requests for the same NAR wait for a single resolution. A failed resolution is not cached.
+     *
+     * @param narArtifact the NAR to resolve
+     * @param resolver resolves the NAR if it has not been resolved yet
+     * @return the artifacts of the NAR, which are shared and cannot be modified
+     * @throws MojoExecutionException if the NAR's dependencies cannot be resolved
+     * @throws ProjectBuildingException if the NAR's project cannot be built
+     */
+    public Set<Artifact> getArtifacts(final Artifact narArtifact, final NarResolver resolver) throws MojoExecutionException, ProjectBuildingException {
+        final String key = narArtifact.getId();
+
+        final FutureTask<Set<Artifact>> task = new FutureTask<>(() -> Collections.unmodifiableSet(new TreeSet<>(resolver.resolve(narArtifact))));
+        final FutureTask<Set<Artifact>> existingTask = resolvedNars.putIfAbsent(key, task);
+        final FutureTask<Set<Artifact>> resolution = existingTask == null ? task : existingTask;
+
+        if (existingTask == null) {
+            task.run();
+        }
+
+        try {
+            return resolution.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while resolving NAR " + narArtifact, e);
+        } catch (final ExecutionException e) {
+            resolvedNars.remove(key, resolution);
+
+            final Throwable cause = e.getCause();
+            if (cause instanceof MojoExecutionException) {
+                throw (MojoExecutionException) cause;
+            }
+            if (cause instanceof ProjectBuildingException) {
+                throw (ProjectBuildingException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+
+            throw new MojoExecutionException("Failed to resolve NAR " + narArtifact, cause);
+        }
+    }
+
+    /**
+     * Resolves a NAR that has not been cached yet.
+     */
+    public interface NarResolver {
+        Set<Artifact> resolve(Artifact narArtifact) throws MojoExecutionException, ProjectBuildingException;
+    }
+}
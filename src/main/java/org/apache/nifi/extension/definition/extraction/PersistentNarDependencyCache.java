@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.extension.definition.extraction;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.nifi.utils.NarDescriptor;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A persistent cache of the dependency sets of NARs, kept between builds so that the POM inheritance chain of a parent NAR does not
+ * have to be built again by every build that depends on it. Entries for released NARs whose dependencies are all released are valid
+ * indefinitely. Otherwise an entry records the location, size and modification time of the POM of the NAR and of every snapshot in its
+ * dependency set, along with every parent POM and imported BOM that these inherit from, and is only used while all of these POMs are
+ * unchanged.
+ */
+public class PersistentNarDependencyCache {
+    private static final String FORMAT_VERSION = "3";
+    private static final String RELEASE_STAMP = "release";
+    private static final String FIELD_SEPARATOR = "\t";
+
+    private final File cacheDirectory;
+    private final PomInheritanceResolver pomInheritanceResolver;
+    private final Log log;
+
+    PersistentNarDependencyCache(final File cacheDirectory, final PomInheritanceResolver pomInheritanceResolver, final Log log) {
+        this.cacheDirectory = cacheDirectory;
+        this.pomInheritanceResolver = pomInheritanceResolver;
+        this.log = log;
+    }
+
+    /**
+     * Returns the cached dependency set of the given NAR.
+     *
+     * @param narArtifact the NAR
+     * @return the artifacts in the NAR's dependency graph, without files, or <code>null</code> if there is no valid entry for the NAR
+     */
+    public Set<Artifact> load(final Artifact narArtifact) {
+        final File entryFile = getEntryFile(narArtifact);
+        if (!entryFile.isFile()) {
+            return null;
+        }
+
+        try (final BufferedReader reader = Files.newBufferedReader(entryFile.toPath(), StandardCharsets.UTF_8)) {
+            if (!FORMAT_VERSION.equals(reader.readLine())) {
+                return null;
+            }
+
+            final String cachedStamp = reader.readLine();
+
+            final Set<Artifact> artifacts = new TreeSet<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] fields = line.split(FIELD_SEPARATOR, -1);
+                if (fields.length != 8) {
+                    throw new IOException("Malformed entry " + line);
+                }
+
+                final NarDescriptor.Node node = new NarDescriptor.Node(fields[0], fields[1], fields[2], emptyToNull(fields[3]), emptyToNull(fields[4]),
+                    emptyToNull(fields[5]), emptyToNull(fields[6]), Boolean.parseBoolean(fields[7]), null);
+                artifacts.add(node.toArtifact());
+            }
+
+            // the stamp covers the snapshots in the dependency set, so it can only be determined once the set is read
+            final String stamp = getStamp(narArtifact, artifacts);
+            if (stamp == null || !stamp.equals(cachedStamp)) {
+                log.debug("Cached dependencies of " + narArtifact + " are out of date");
+                return null;
+            }
+
+            log.debug("Loaded the dependencies of " + narArtifact + " from " + entryFile);
+            return artifacts;
+        } catch (final IOException e) {
+            log.debug("Unable to read cached dependencies of " + narArtifact + " from " + entryFile, e);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the dependency set of the given NAR, replacing any existing entry.
+     *
+     * @param narArtifact the NAR
+     * @param artifacts the artifacts in the NAR's dependency graph
+     */
+    public void store(final Artifact narArtifact, final Set<Artifact> artifacts) {
+        final String stamp = getStamp(narArtifact, artifacts);
+        if (stamp == null) {
+            return;
+        }
+
+        final File entryFile = getEntryFile(narArtifact);
+        Path tempFile = null;
+        try {
+            Files.createDirectories(entryFile.getParentFile().toPath());
+
+            // write a temporary file and move it into place so that concurrent builds never read a partially written entry
+            tempFile = Files.createTempFile(entryFile.getParentFile().toPath(), entryFile.getName() + ".", ".tmp");
+            try (final BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                writer.write(FORMAT_VERSION);
+                writer.newLine();
+                writer.write(stamp);
+                writer.newLine();
+
+                for (final Artifact artifact : artifacts) {
+                    final NarDescriptor.Node node = NarDescriptor.Node.fromArtifact(artifact, null);
+                    writer.write(String.join(FIELD_SEPARATOR, node.getGroupId(), node.getArtifactId(), node.getVersion(), nullToEmpty(node.getType()),
+                        nullToEmpty(node.getExtension()), nullToEmpty(node.getClassifier()), nullToEmpty(node.getScope()), String.valueOf(node.isOptional())));
+                    writer.newLine();
+                }
+            }
+
+            Files.move(tempFile, entryFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.debug("Stored the dependencies of " + narArtifact + " in " + entryFile);
+        } catch (final IOException e) {
+            log.debug("Unable to cache the dependencies of " + narArtifact + " in " + entryFile, e);
+        } finally {
+            if (tempFile != null) {
+                try {
+                    Files.deleteIfExists(tempFile);
+                } catch (final IOException ignored) {
+                    // a leftover temporary file is never read as an entry
+                }
+            }
+        }
+    }
+
+    private File getEntryFile(final Artifact narArtifact) {
+        final File artifactDirectory = new File(new File(cacheDirectory, narArtifact.getGroupId()), narArtifact.getArtifactId());
+        return new File(artifactDirectory, narArtifact.getBaseVersion() + ".txt");
+    }
+
+    /**
+     * @return the stamp of the POMs that the given dependency set was derived from, or <code>null</code> if any of them cannot be resolved
+     */
+    private String getStamp(final Artifact narArtifact, final Set<Artifact> artifacts) {
+        final List<Artifact> snapshots = new ArrayList<>();
+        if (narArtifact.isSnapshot()) {
+            snapshots.add(narArtifact);
+        }
+        // the set is iterated in a stable order so that the stamp of a stored set matches that of the set when it is loaded
+        for (final Artifact artifact : new TreeSet<>(artifacts)) {
+            if (artifact.isSnapshot()) {
+                snapshots.add(artifact);
+            }
+        }
+
+        if (snapshots.isEmpty()) {
+            return RELEASE_STAMP;
+        }
+
+        // artifacts share parent POMs and BOMs, which only need to be stamped once
+        final Set<File> pomFiles = new LinkedHashSet<>();
+        for (final Artifact snapshot : snapshots) {
+            // loaded artifacts only have their base version, so the POM of the base version is used for resolved artifacts as well
+            final List<File> chain = pomInheritanceResolver.resolve(snapshot.getGroupId(), snapshot.getArtifactId(), snapshot.getBaseVersion());
+            if (chain == null) {
+                log.debug("Unable to resolve the POMs that " + snapshot + " inherits from, so the cached dependencies of " + narArtifact + " cannot be used");
+                return null;
+            }
+            pomFiles.addAll(chain);
+        }
+
+        final StringBuilder stamp = new StringBuilder();
+        for (final File pomFile : pomFiles) {
+            if (!pomFile.isFile()) {
+                return null;
+            }
+
+            if (stamp.length() > 0) {
+                stamp.append(FIELD_SEPARATOR);
+            }
+            stamp.append(pomFile.getAbsolutePath()).append(FIELD_SEPARATOR).append(pomFile.length()).append(FIELD_SEPARATOR).append(pomFile.lastModified());
+        }
+        return stamp.toString();
+    }
+
+    private static String emptyToNull(final String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    private static String nullToEmpty(final String value) {
+        return value == null ? "" : value;
+    }
+}
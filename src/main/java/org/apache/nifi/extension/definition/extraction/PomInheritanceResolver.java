@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.extension.definition.extraction;
+
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Parent;
+import org.apache.maven.model.Repository;
+import org.apache.maven.model.building.DefaultModelBuildingRequest;
+import org.apache.maven.model.building.FileModelSource;
+import org.apache.maven.model.building.ModelBuilder;
+import org.apache.maven.model.building.ModelBuildingException;
+import org.apache.maven.model.building.ModelBuildingRequest;
+import org.apache.maven.model.building.ModelBuildingResult;
+import org.apache.maven.model.building.ModelSource;
+import org.apache.maven.model.resolution.ModelResolver;
+import org.apache.maven.model.resolution.UnresolvableModelException;
+import org.apache.maven.plugin.logging.Log;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.ArtifactResolutionException;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Resolves the POMs that an artifact's dependencies are derived from: the artifact's own POM, the parent POMs it inherits from and the
+ * BOMs that any of these import, along with their own parents and imports. The POM is built by Maven's {@link ModelBuilder}, so the
+ * coordinates of parents and imported BOMs are interpolated just as when the artifact's dependencies are resolved, including profiles
+ * and the system and user properties of the session. Every POM that the build reads is recorded.
+ */
+class PomInheritanceResolver {
+    private final ModelBuilder modelBuilder;
+    private final RepositorySystem repositorySystem;
+    private final RepositorySystemSession repositorySession;
+    private final List<RemoteRepository> remoteRepositories;
+    private final Log log;
+
+    PomInheritanceResolver(final ModelBuilder modelBuilder, final RepositorySystem repositorySystem, final RepositorySystemSession repositorySession,
+                           final List<RemoteRepository> remoteRepositories, final Log log) {
+        this.modelBuilder = modelBuilder;
+        this.repositorySystem = repositorySystem;
+        this.repositorySession = repositorySession;
+        this.remoteRepositories = remoteRepositories;
+        this.log = log;
+    }
+
+    /**
+     * @param groupId the group id of the artifact
+     * @param artifactId the artifact id of the artifact
+     * @param version the version of the artifact
+     * @return the POM files, starting with the artifact's own POM, or <code>null</code> if any of them cannot be resolved
+     */
+    List<File> resolve(final String groupId, final String artifactId, final String version) {
+        if (modelBuilder == null || repositorySystem == null || repositorySession == null) {
+            return null;
+        }
+
+        final RecordingModelResolver modelResolver = new RecordingModelResolver(remoteRepositories, new LinkedHashSet<>());
+        final File pomFile;
+        try {
+            pomFile = modelResolver.resolvePom(groupId, artifactId, version);
+        } catch (final UnresolvableModelException e) {
+            log.debug("Unable to resolve the POM of " + groupId + ":" + artifactId + ":" + version, e);
+            return null;
+        }
+
+        final DefaultModelBuildingRequest request = new DefaultModelBuildingRequest();
+        request.setPomFile(pomFile);
+        request.setValidationLevel(ModelBuildingRequest.VALIDATION_LEVEL_MINIMAL);
+        request.setProcessPlugins(false);
+        request.setTwoPhaseBuilding(false);
+        request.setSystemProperties(toProperties(repositorySession.getSystemProperties()));
+        request.setUserProperties(toProperties(repositorySession.getUserProperties()));
+        request.setModelResolver(modelResolver);
+
+        final ModelBuildingResult result;
+        try {
+            result = modelBuilder.build(request);
+        } catch (final ModelBuildingException e) {
+            log.debug("Unable to build the POM of " + groupId + ":" + artifactId + ":" + version, e);
+            return null;
+        }
+
+        // parents that are found through their relative path are read from the file system rather than resolved
+        final Set<File> pomFiles = new LinkedHashSet<>();
+        pomFiles.add(pomFile);
+        for (final String modelId : result.getModelIds()) {
+            final Model rawModel = result.getRawModel(modelId);
+            if (rawModel != null && rawModel.getPomFile() != null) {
+                pomFiles.add(rawModel.getPomFile());
+            }
+        }
+        pomFiles.addAll(modelResolver.resolvedPomFiles);
+
+        return new ArrayList<>(pomFiles);
+    }
+
+    private static Properties toProperties(final Map<String, String> values) {
+        final Properties properties = new Properties();
+        properties.putAll(values);
+        return properties;
+    }
+
+    /**
+     * Resolves parent POMs and imported BOMs through the repository system and records the files of all of them. Copies share the
+     * record, since the model builder resolves the parents of imported BOMs through a copy.
+     */
+    private class RecordingModelResolver implements ModelResolver {
+        private final List<RemoteRepository> repositories;
+        private final Set<File> resolvedPomFiles;
+
+        RecordingModelResolver(final List<RemoteRepository> repositories, final Set<File> resolvedPomFiles) {
+            this.repositories = new ArrayList<>(repositories == null ? Collections.emptyList() : repositories);
+            this.resolvedPomFiles = resolvedPomFiles;
+        }
+
+        File resolvePom(final String groupId, final String artifactId, final String version) throws UnresolvableModelException {
+            final DefaultArtifact pomArtifact = new DefaultArtifact(groupId, artifactId, "", "pom", version);
+            try {
+                return repositorySystem.resolveArtifact(repositorySession, new ArtifactRequest(pomArtifact, repositories, null)).getArtifact().getFile();
+            } catch (final ArtifactResolutionException e) {
+                throw new UnresolvableModelException(e.getMessage(), groupId, artifactId, version, e);
+            }
+        }
+
+        @Override
+        public ModelSource resolveModel(final String groupId, final String artifactId, final String version) throws UnresolvableModelException {
+            final File pomFile = resolvePom(groupId, artifactId, version);
+            synchronized (resolvedPomFiles) {
+                resolvedPomFiles.add(pomFile);
+            }
+            return new FileModelSource(pomFile);
+        }
+
+        public ModelSource resolveModel(final Parent parent) throws UnresolvableModelException {
+            return resolveModel(parent.getGroupId(), parent.getArtifactId(), parent.getVersion());
+        }
+
+        public ModelSource resolveModel(final Dependency dependency) throws UnresolvableModelException {
+            return resolveModel(dependency.getGroupId(), dependency.getArtifactId(), dependency.getVersion());
+        }
+
+        @Override
+        public void addRepository(final Repository repository) {
+            addRepository(repository, false);
+        }
+
+        public void addRepository(final Repository repository, final boolean replace) {
+            for (int i = 0; i < repositories.size(); i++) {
+                if (repositories.get(i).getId().equals(repository.getId())) {
+                    if (replace) {
+                        repositories.remove(i);
+                        break;
+                    }
+                    return;
+                }
+            }
+
+            final RemoteRepository remoteRepository = new RemoteRepository.Builder(repository.getId(), repository.getLayout(), repository.getUrl()).build();
+            // mirrors, proxies and authentication of the session apply to repositories declared in POMs as well
+            repositories.addAll(repositorySystem.newResolutionRepositories(repositorySession, Collections.singletonList(remoteRepository)));
+        }
+
+        @Override
+        public ModelResolver newCopy() {
+            return new RecordingModelResolver(repositories, resolvedPomFiles);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.extension.definition.extraction;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Reads the <code>META-INF/services</code> registrations of a single jar or classes directory without creating a ClassLoader.
+ */
+public class ServiceRegistrationScanner {
+    public static final String SERVICES_DIRECTORY = "META-INF/services/";
+    public static final String NIFI_SERVICE_PREFIX = "org.apache.nifi.";
+
+    private final String servicePrefix;
+
+    /**
+     * @param servicePrefix only service registrations whose name starts with this prefix are read
+     */
+    public ServiceRegistrationScanner(final String servicePrefix) {
+        this.servicePrefix = servicePrefix;
+    }
+
+    /**
+     * Reads the service registrations of a jar file or a classes directory. Any other kind of file has no registrations.
+     *
+     * @param source the jar file or directory
+     * @return the registered class names, keyed by the name of the service they are registered for
+     * @throws IOException if the registrations cannot be read
+     */
+    public Map<String, Set<String>> scan(final File source) throws IOException {
+        if (source.isDirectory()) {
+            return scanDirectory(source);
+        }
+
+        if (source.isFile() && source.getName().endsWith(".jar")) {
+            return scanJar(source);
+        }
+
+        return new TreeMap<>();
+    }
+
+    private Map<String, Set<String>> scanDirectory(final File directory) throws IOException {
+        final Map<String, Set<String>> registrations = new TreeMap<>();
+
+        final File servicesDirectory = new File(directory, SERVICES_DIRECTORY);
+        final File[] serviceFiles = servicesDirectory.listFiles();
+        if (serviceFiles == null) {
+            return registrations;
+        }
+
+        for (final File serviceFile : serviceFiles) {
+            final String serviceName = serviceFile.getName();
+            if (!serviceFile.isFile() || !serviceName.startsWith(servicePrefix)) {
+                continue;
+            }
+
+            try (final InputStream in = Files.newInputStream(serviceFile.toPath())) {
+                addClassNames(registrations, serviceName, in);
+            }
+        }
+
+        return registrations;
+    }
+
+    private Map<String, Set<String>> scanJar(final File file) throws IOException {
+        final Map<String, Set<String>> registrations = new TreeMap<>();
+
+        try (final JarFile jarFile = new JarFile(file)) {
+            for (final Enumeration<JarEntry> jarEnumeration = jarFile.entries(); jarEnumeration.hasMoreElements();) {
+                final JarEntry jarEntry = jarEnumeration.nextElement();
+                final String entryName = jarEntry.getName();
+                if (jarEntry.isDirectory() || !entryName.startsWith(SERVICES_DIRECTORY)) {
+                    continue;
+                }
+
+                final String serviceName = entryName.substring(SERVICES_DIRECTORY.length());
+                if (serviceName.indexOf('/') >= 0 || !serviceName.startsWith(servicePrefix)) {
+                    continue;
+                }
+
+                try (final InputStream in = jarFile.getInputStream(jarEntry)) {
+                    addClassNames(registrations, serviceName, in);
+                }
+            }
+        }
+
+        return registrations;
+    }
+
+    private void addClassNames(final Map<String, Set<String>> registrations, final String serviceName, final InputStream in) throws IOException {
+        final Set<String> classNames = registrations.computeIfAbsent(serviceName, name -> new TreeSet<>());
+
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            classNames.add(line);
+        }
+    }
+}
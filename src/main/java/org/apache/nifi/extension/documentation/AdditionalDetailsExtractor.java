@@ -0,0 +1,197 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.extension.documentation;
+
+import org.apache.maven.plugin.logging.Log;
+import org.apache.nifi.utils.ParallelTasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Finds the additional details documentation that extensions ship in the <code>docs/&lt;extension name&gt;/</code> directory
+ * of their jars. All jars are scanned once for all extensions together, optionally in parallel.
+ */
+public class AdditionalDetailsExtractor {
+    private static final String DOCS_DIRECTORY = "docs/";
+
+    private final Log log;
+    private final int threads;
+
+    public AdditionalDetailsExtractor(final Log log, final int threads) {
+        this.log = log;
+        this.threads = threads;
+    }
+
+    /**
+     * Finds the additional details for the given extensions. When more than one jar contains the same file, the file from the jar
+     * that comes last in the given list is used.
+     *
+     * @param jarFiles the jars to scan
+     * @param extensionNames the fully qualified class names of the extensions to find documentation for
+     * @return the documentation files, keyed by their path relative to the additional details directory
+     * @throws IOException if any of the jars cannot be read
+     */
+    public Map<String, AdditionalDetailsEntry> find(final List<File> jarFiles, final Set<String> extensionNames) throws IOException {
+        final List<Callable<List<AdditionalDetailsEntry>>> scanTasks = new ArrayList<>(jarFiles.size());
+        for (final File jarFile : jarFiles) {
+            scanTasks.add(() -> scan(jarFile, extensionNames));
+        }
+
+        final List<List<AdditionalDetailsEntry>> scanResults = invokeAll(scanTasks);
+
+        final Map<String, AdditionalDetailsEntry> entries = new TreeMap<>();
+        for (final List<AdditionalDetailsEntry> jarEntries : scanResults) {
+            for (final AdditionalDetailsEntry entry : jarEntries) {
+                log.debug("Found file " + entry.getEntryName() + " in " + entry.getJarFile() + " that consists of documentation for " + entry.getComponentName());
+                entries.put(entry.getDestinationPath(), entry);
+            }
+        }
+
+        return entries;
+    }
+
+    /**
+     * Writes the given documentation files into the additional details directory, opening each jar once.
+     *
+     * @param entries the documentation files, as returned by {@link #find(List, Set)}
+     * @param additionalDetailsDir the directory to write the files to
+     * @throws IOException if any of the files cannot be written
+     */
+    public void extract(final Map<String, AdditionalDetailsEntry> entries, final File additionalDetailsDir) throws IOException {
+        final Map<File, List<AdditionalDetailsEntry>> entriesByJar = new LinkedHashMap<>();
+        for (final AdditionalDetailsEntry entry : entries.values()) {
+            entriesByJar.computeIfAbsent(entry.getJarFile(), jar -> new ArrayList<>()).add(entry);
+        }
+
+        final List<Callable<Void>> extractTasks = new ArrayList<>(entriesByJar.size());
+        for (final Map.Entry<File, List<AdditionalDetailsEntry>> jarEntries : entriesByJar.entrySet()) {
+            extractTasks.add(() -> {
+                extract(jarEntries.getKey(), jarEntries.getValue(), additionalDetailsDir);
+                return null;
+            });
+        }
+
+        invokeAll(extractTasks);
+    }
+
+    private List<AdditionalDetailsEntry> scan(final File file, final Set<String> extensionNames) throws IOException {
+        final List<AdditionalDetailsEntry> entries = new ArrayList<>();
+
+        try (final JarFile jarFile = new JarFile(file)) {
+            for (final Enumeration<JarEntry> jarEnumeration = jarFile.entries(); jarEnumeration.hasMoreElements();) {
+                final JarEntry jarEntry = jarEnumeration.nextElement();
+
+                final String entryName = jarEntry.getName();
+                if (!entryName.startsWith(DOCS_DIRECTORY) || jarEntry.isDirectory()) {
+                    continue;
+                }
+
+                final int nextSlashIndex = entryName.indexOf("/", DOCS_DIRECTORY.length());
+                if (nextSlashIndex < 0 || entryName.length() <= nextSlashIndex + 1) {
+                    continue;
+                }
+
+                final String componentName = entryName.substring(DOCS_DIRECTORY.length(), nextSlashIndex);
+                if (!extensionNames.contains(componentName)) {
+                    continue;
+                }
+
+                entries.add(new AdditionalDetailsEntry(file, entryName, componentName, entryName.substring(nextSlashIndex + 1)));
+            }
+        }
+
+        return entries;
+    }
+
+    private void extract(final File file, final List<AdditionalDetailsEntry> entries, final File additionalDetailsDir) throws IOException {
+        try (final JarFile jarFile = new JarFile(file)) {
+            for (final AdditionalDetailsEntry entry : entries) {
+                final File destinationFile = new File(additionalDetailsDir, entry.getDestinationPath());
+                Files.createDirectories(destinationFile.getParentFile().toPath());
+
+                try (final InputStream in = jarFile.getInputStream(jarFile.getJarEntry(entry.getEntryName()))) {
+                    Files.copy(in, destinationFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+    }
+
+    private <T> List<T> invokeAll(final List<Callable<T>> tasks) throws IOException {
+        if (tasks.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        try {
+            return ParallelTasks.invokeAll(tasks, threads, "Additional Details");
+        } catch (final IOException | RuntimeException e) {
+            throw e;
+        } catch (final Exception e) {
+            throw new IOException("Unable to extract Additional Details", e);
+        }
+    }
+
+    /**
+     * A single additional details file within an extension jar.
+     */
+    public static class AdditionalDetailsEntry {
+        private final File jarFile;
+        private final String entryName;
+        private final String componentName;
+        private final String remainingPath;
+
+        public AdditionalDetailsEntry(final File jarFile, final String entryName, final String componentName, final String remainingPath) {
+            this.jarFile = jarFile;
+            this.entryName = entryName;
+            this.componentName = componentName;
+            this.remainingPath = remainingPath;
+        }
+
+        public File getJarFile() {
+            return jarFile;
+        }
+
+        public String getEntryName() {
+            return entryName;
+        }
+
+        public String getComponentName() {
+            return componentName;
+        }
+
+        /**
+         * @return the path of this file relative to the additional details directory
+         */
+        public String getDestinationPath() {
+            return componentName + "/" + remainingPath;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.extension.documentation;
+
+import org.codehaus.plexus.util.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * A persistent, content addressed cache of generated extension documentation. Each entry is a copy of the
+ * <code>META-INF/docs</code> directory produced for a NAR, stored under a key that identifies all of the inputs
+ * that the documentation was generated from. Entries are never modified once written, so the cache may be shared
+ * by concurrent builds.
+ */
+public class DocumentationCache {
+    private static final String MANIFEST_FILENAME = "extension-manifest.xml";
+
+    private final File cacheDirectory;
+
+    public DocumentationCache(final File cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    /**
+     * Replaces the contents of the given documentation directory with the cached documentation for the given key.
+     *
+     * @param key the key identifying the inputs of the documentation
+     * @param docsDirectory the documentation directory of the NAR being built
+     * @return <code>true</code> if the cache held documentation for the key, <code>false</code> otherwise
+     * @throws IOException if the cached documentation could not be restored
+     */
+    public boolean restore(final String key, final File docsDirectory) throws IOException {
+        final File entryDirectory = new File(cacheDirectory, key);
+        if (!new File(entryDirectory, MANIFEST_FILENAME).isFile()) {
+            return false;
+        }
+
+        if (docsDirectory.exists()) {
+            FileUtils.deleteDirectory(docsDirectory);
+        }
+        FileUtils.copyDirectoryStructure(entryDirectory, docsDirectory);
+        return true;
+    }
+
+    /**
+     * Stores a copy of the given documentation directory under the given key, unless the cache already holds an entry for it.
+     *
+     * @param key the key identifying the inputs of the documentation
+     * @param docsDirectory the documentation directory of the NAR being built
+     * @throws IOException if the documentation could not be stored
+     */
+    public void store(final String key, final File docsDirectory) throws IOException {
+        final File entryDirectory = new File(cacheDirectory, key);
+        if (entryDirectory.exists()) {
+            return;
+        }
+
+        // populate a temporary directory and move it into place so that a partially written entry is never visible
+        Files.createDirectories(cacheDirectory.toPath());
+        final Path tempDirectory = Files.createTempDirectory(cacheDirectory.toPath(), key + ".");
+        try {
+            FileUtils.copyDirectoryStructure(docsDirectory, tempDirectory.toFile());
+            Files.move(tempDirectory, entryDirectory.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (final FileAlreadyExistsException | DirectoryNotEmptyException e) {
+            // another build stored the same documentation concurrently
+        } finally {
+            if (Files.exists(tempDirectory)) {
+                FileUtils.deleteDirectory(tempDirectory.toFile());
+            }
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.extension.documentation;
+
+import org.apache.nifi.extension.definition.ServiceAPIDefinition;
+
+import javax.xml.stream.XMLStreamWriter;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Calls the documentation writer of the NiFi API, and the NiFi API types it works with, which are only available through the extension
+ * ClassLoader. The methods and constructors are looked up once per ClassLoader and kept as {@link MethodHandle}s, rather than being
+ * looked up again through reflection for every extension and every property. A bridge may be used by several threads at once.
+ */
+public class DocumentationWriterBridge {
+    private static final String CONFIGURABLE_COMPONENT_CLASS_NAME = "org.apache.nifi.components.ConfigurableComponent";
+    private static final String SERVICE_API_CLASS_NAME = "org.apache.nifi.documentation.StandardServiceAPI";
+
+    private static final MethodType WRITER_CONSTRUCTOR_TYPE = MethodType.methodType(Object.class, XMLStreamWriter.class);
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType WRITE_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+    private static final MethodType WRITE_WITH_SERVICE_APIS_TYPE = MethodType.methodType(void.class, Object.class, Object.class, Object.class, Object.class);
+    private static final MethodType SERVICE_API_CONSTRUCTOR_TYPE = MethodType.methodType(Object.class, String.class, String.class, String.class, String.class);
+
+    private final MethodHandles.Lookup lookup = MethodHandles.lookup();
+    private final ClassLoader classLoader;
+    private final Class<?> docWriterClass;
+    private final Class<?> configurableComponentClass;
+
+    private final MethodHandle writerConstructor;
+    private final MethodHandle initialize;
+    private final MethodHandle write;
+    private final MethodHandle getPropertyDescriptors;
+
+    private final ConcurrentMap<Class<?>, PropertyDescriptorHandles> propertyDescriptorHandles = new ConcurrentHashMap<>();
+    private volatile MethodHandle writeWithServiceAPIs;
+    private volatile MethodHandle serviceAPIConstructor;
+
+    /**
+     * @param docWriterClass the documentation writer class, as loaded by the extension ClassLoader
+     * @param classLoader the extension ClassLoader
+     * @throws ReflectiveOperationException if the documentation writer or the NiFi API do not have the expected methods
+     */
+    public DocumentationWriterBridge(final Class<?> docWriterClass, final ClassLoader classLoader) throws ReflectiveOperationException {
+        this.classLoader = classLoader;
+        this.docWriterClass = docWriterClass;
+        this.configurableComponentClass = Class.forName(CONFIGURABLE_COMPONENT_CLASS_NAME, false, classLoader);
+
+        this.writerConstructor = lookup.unreflectConstructor(docWriterClass.getConstructor(XMLStreamWriter.class)).asType(WRITER_CONSTRUCTOR_TYPE);
+        this.initialize = lookup.unreflect(docWriterClass.getMethod("initialize", configurableComponentClass)).asType(WRITE_TYPE);
+        this.write = lookup.unreflect(docWriterClass.getMethod("write", configurableComponentClass)).asType(WRITE_TYPE);
+        this.getPropertyDescriptors = lookup.unreflect(configurableComponentClass.getMethod("getPropertyDescriptors")).asType(GETTER_TYPE);
+    }
+
+    /**
+     * Creates a documentation writer that writes to the given writer.
+     */
+    public Object createWriter(final XMLStreamWriter xmlWriter) throws InvocationTargetException {
+        try {
+            return (Object) writerConstructor.invokeExact(xmlWriter);
+        } catch (final Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    public void initialize(final Object docWriter, final Object component) throws InvocationTargetException {
+        try {
+            initialize.invokeExact(docWriter, component);
+        } catch (final Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    public void write(final Object docWriter, final Object component) throws InvocationTargetException {
+        try {
+            write.invokeExact(docWriter, component);
+        } catch (final Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    /**
+     * Writes the documentation of a component together with the service APIs it provides and the service APIs its properties require.
+     */
+    public void write(final Object docWriter, final Object component, final List<Object> providedServices, final Map<String, Object> propertyServices)
+            throws ReflectiveOperationException {
+        MethodHandle handle = writeWithServiceAPIs;
+        if (handle == null) {
+            handle = lookup.unreflect(docWriterClass.getMethod("write", configurableComponentClass, Collection.class, Map.class)).asType(WRITE_WITH_SERVICE_APIS_TYPE);
+            writeWithServiceAPIs = handle;
+        }
+
+        try {
+            handle.invokeExact(docWriter, component, (Object) providedServices, (Object) propertyServices);
+        } catch (final Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    /**
+     * Creates the NiFi API's representation of a service API, as passed to the documentation writer.
+     */
+    public Object createServiceAPI(final ServiceAPIDefinition definition) throws ReflectiveOperationException {
+        MethodHandle handle = serviceAPIConstructor;
+        if (handle == null) {
+            final Class<?> serviceApiClass = Class.forName(SERVICE_API_CLASS_NAME, false, classLoader);
+            handle = lookup.unreflectConstructor(serviceApiClass.getConstructor(String.class, String.class, String.class, String.class)).asType(SERVICE_API_CONSTRUCTOR_TYPE);
+            serviceAPIConstructor = handle;
+        }
+
+        try {
+            return (Object) handle.invokeExact(definition.getServiceAPIClassName(), definition.getServiceGroupId(), definition.getServiceArtifactId(),
+                definition.getServiceVersion());
+        } catch (final Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    /**
+     * @return the property descriptors of the given component, which may be <code>null</code>
+     */
+    @SuppressWarnings("unchecked")
+    public List<Object> getPropertyDescriptors(final Object component) throws InvocationTargetException {
+        try {
+            return (List<Object>) (Object) getPropertyDescriptors.invokeExact(component);
+        } catch (final Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    public String getPropertyName(final Object propertyDescriptor) throws ReflectiveOperationException {
+        try {
+            return (String) (Object) getPropertyDescriptorHandles(propertyDescriptor).getName.invokeExact(propertyDescriptor);
+        } catch (final ReflectiveOperationException e) {
+            throw e;
+        } catch (final Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    /**
+     * @return the controller service interface that the given property requires, or <code>null</code> if it does not refer to a controller service
+     */
+    public Class<?> getControllerServiceDefinition(final Object propertyDescriptor) throws ReflectiveOperationException {
+        try {
+            return (Class<?>) (Object) getPropertyDescriptorHandles(propertyDescriptor).getControllerServiceDefinition.invokeExact(propertyDescriptor);
+        } catch (final ReflectiveOperationException e) {
+            throw e;
+        } catch (final Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    private PropertyDescriptorHandles getPropertyDescriptorHandles(final Object propertyDescriptor) throws ReflectiveOperationException {
+        final Class<?> descriptorClass = propertyDescriptor.getClass();
+        PropertyDescriptorHandles handles = propertyDescriptorHandles.get(descriptorClass);
+        if (handles == null) {
+            handles = new PropertyDescriptorHandles(
+                lookup.unreflect(descriptorClass.getMethod("getName")).asType(GETTER_TYPE),
+                lookup.unreflect(descriptorClass.getMethod("getControllerServiceDefinition")).asType(GETTER_TYPE));
+            propertyDescriptorHandles.putIfAbsent(descriptorClass, handles);
+        }
+        return handles;
+    }
+
+    /**
+     * Rethrows unchecked exceptions and errors as they are, and wraps anything else, as reflection would.
+     */
+    private static InvocationTargetException propagate(final Throwable t) {
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        return new InvocationTargetException(t);
+    }
+
+    private static class PropertyDescriptorHandles {
+        private final MethodHandle getName;
+        private final MethodHandle getControllerServiceDefinition;
+
+        PropertyDescriptorHandles(final MethodHandle getName, final MethodHandle getControllerServiceDefinition) {
+            this.getName = getName;
+            this.getControllerServiceDefinition = getControllerServiceDefinition;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.extension.documentation;
+
+import org.apache.nifi.extension.definition.ExtensionType;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * The cost of instantiating each extension in a NAR, as measured while its documentation is generated. Generating the documentation
+ * loads, initializes and constructs every extension and asks it for its property descriptors, just as NiFi does when it starts, so the
+ * measurements show what each extension adds to the startup time of a NiFi node. Costs may be added by several threads at once.
+ */
+public class ExtensionCostReport {
+    private final List<ExtensionCost> extensionCosts = new ArrayList<>();
+
+    public synchronized void add(final ExtensionCost extensionCost) {
+        extensionCosts.add(extensionCost);
+    }
+
+    /**
+     * @return the costs of all extensions, ordered by extension type and name
+     */
+    public synchronized List<ExtensionCost> getExtensionCosts() {
+        final List<ExtensionCost> sorted = new ArrayList<>(extensionCosts);
+        sorted.sort(Comparator.comparing(ExtensionCost::getExtensionType).thenComparing(ExtensionCost::getExtensionName));
+        return sorted;
+    }
+
+    /**
+     * @param thresholdMillis the maximum total cost of an extension, in milliseconds
+     * @return the costs of the extensions whose total cost exceeds the threshold, ordered by extension type and name
+     */
+    public List<ExtensionCost> getExtensionCostsExceeding(final long thresholdMillis) {
+        final long thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        return getExtensionCosts().stream()
+            .filter(cost -> cost.getTotalNanos() > thresholdNanos)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Writes the report as a JSON document.
+     *
+     * @param file the file to write
+     * @param nar the coordinates of the NAR that the extensions belong to
+     * @param thresholdMillis the threshold that the costs are checked against, or 0 if they are not checked
+     * @throws IOException if the file could not be written
+     */
+    public void write(final File file, final String nar, final long thresholdMillis) throws IOException {
+        try (final Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write("{\n");
+            writer.write("  \"nar\": " + quote(nar) + ",\n");
+            writer.write("  \"thresholdMillis\": " + thresholdMillis + ",\n");
+            writer.write("  \"extensions\": [");
+
+            final List<ExtensionCost> costs = getExtensionCosts();
+            for (int i = 0; i < costs.size(); i++) {
+                final ExtensionCost cost = costs.get(i);
+                writer.write(i == 0 ? "\n" : ",\n");
+                writer.write("    {\n");
+                writer.write("      \"type\": " + quote(cost.getExtensionType().name()) + ",\n");
+                writer.write("      \"name\": " + quote(cost.getExtensionName()) + ",\n");
+                writer.write("      \"classLoadMillis\": " + toMillis(cost.getClassLoadNanos()) + ",\n");
+                writer.write("      \"staticInitMillis\": " + toMillis(cost.getStaticInitNanos()) + ",\n");
+                writer.write("      \"constructMillis\": " + toMillis(cost.getConstructNanos()) + ",\n");
+                writer.write("      \"propertyDescriptorsMillis\": " + toMillis(cost.getPropertyDescriptorsNanos()) + ",\n");
+                writer.write("      \"totalMillis\": " + toMillis(cost.getTotalNanos()) + ",\n");
+                writer.write("      \"classesLoaded\": " + cost.getClassesLoaded() + "\n");
+                writer.write("    }");
+            }
+
+            writer.write(costs.isEmpty() ? "]\n" : "\n  ]\n");
+            writer.write("}\n");
+        }
+    }
+
+    private static String toMillis(final long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1_000_000.0);
+    }
+
+    private static String quote(final String value) {
+        if (value == null) {
+            return "null";
+        }
+
+        final StringBuilder sb = new StringBuilder(value.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+        return sb.toString();
+    }
+
+    /**
+     * The cost of instantiating a single extension. Times are wall clock times, so they include any time spent waiting for classes
+     * that other threads were loading at the same time.
+     */
+    public static class ExtensionCost {
+        private final ExtensionType extensionType;
+        private final String extensionName;
+        private final long classLoadNanos;
+        private final long staticInitNanos;
+        private final long constructNanos;
+        private final long propertyDescriptorsNanos;
+        private final int classesLoaded;
+
+        /**
+         * @param extensionType the type of the extension
+         * @param extensionName the name of the extension class
+         * @param classLoadNanos the time taken to load the extension class, without initializing it
+         * @param staticInitNanos the time taken to initialize the extension class
+         * @param constructNanos the time taken to construct the extension
+         * @param propertyDescriptorsNanos the time taken by the extension's <code>getPropertyDescriptors</code> method
+         * @param classesLoaded the number of classes that the NAR ClassLoaders defined while the extension was loaded, initialized and
+         * constructed, which does not include classes that an earlier extension had already caused to be loaded
+         */
+        public ExtensionCost(final ExtensionType extensionType, final String extensionName, final long classLoadNanos, final long staticInitNanos,
+                             final long constructNanos, final long propertyDescriptorsNanos, final int classesLoaded) {
+            this.extensionType = extensionType;
+            this.extensionName = extensionName;
+            this.classLoadNanos = classLoadNanos;
+            this.staticInitNanos = staticInitNanos;
+            this.constructNanos = constructNanos;
+            this.propertyDescriptorsNanos = propertyDescriptorsNanos;
+            this.classesLoaded = classesLoaded;
+        }
+
+        public ExtensionType getExtensionType() {
+            return extensionType;
+        }
+
+        public String getExtensionName() {
+            return extensionName;
+        }
+
+        public long getClassLoadNanos() {
+            return classLoadNanos;
+        }
+
+        public long getStaticInitNanos() {
+            return staticInitNanos;
+        }
+
+        public long getConstructNanos() {
+            return constructNanos;
+        }
+
+        public long getPropertyDescriptorsNanos() {
+            return propertyDescriptorsNanos;
+        }
+
+        public long getTotalNanos() {
+            return classLoadNanos + staticInitNanos + constructNanos + propertyDescriptorsNanos;
+        }
+
+        public int getClassesLoaded() {
+            return classesLoaded;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.utils;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link Log} that holds on to its messages until it is flushed to the log it wraps. Tasks that run at the same time each log to a
+ * buffer of their own, and the buffers are flushed one after another, so that the output of each task is kept together.
+ */
+public class BufferingLog implements Log {
+
+    private enum Level {
+        DEBUG, INFO, WARN, ERROR
+    }
+
+    private final Log log;
+    private final List<Entry> entries = new ArrayList<>();
+
+    public BufferingLog(final Log log) {
+        this.log = log;
+    }
+
+    /**
+     * Writes all buffered messages to the wrapped log, in the order in which they were logged, and clears the buffer.
+     */
+    public void flush() {
+        final List<Entry> flushed;
+        synchronized (entries) {
+            flushed = new ArrayList<>(entries);
+            entries.clear();
+        }
+
+        for (final Entry entry : flushed) {
+            entry.writeTo(log);
+        }
+    }
+
+    private void add(final Level level, final CharSequence content, final Throwable error) {
+        synchronized (entries) {
+            entries.add(new Entry(level, content, error));
+        }
+    }
+
+    @Override
+    public boolean isDebugEnabled() {
+        return log.isDebugEnabled();
+    }
+
+    @Override
+    public void debug(final CharSequence content) {
+        add(Level.DEBUG, content, null);
+    }
+
+    @Override
+    public void debug(final CharSequence content, final Throwable error) {
+        add(Level.DEBUG, content, error);
+    }
+
+    @Override
+    public void debug(final Throwable error) {
+        add(Level.DEBUG, null, error);
+    }
+
+    @Override
+    public boolean isInfoEnabled() {
+        return log.isInfoEnabled();
+    }
+
+    @Override
+    public void info(final CharSequence content) {
+        add(Level.INFO, content, null);
+    }
+
+    @Override
+    public void info(final CharSequence content, final Throwable error) {
+        add(Level.INFO, content, error);
+    }
+
+    @Override
+    public void info(final Throwable error) {
+        add(Level.INFO, null, error);
+    }
+
+    @Override
+    public boolean isWarnEnabled() {
+        return log.isWarnEnabled();
+    }
+
+    @Override
+    public void warn(final CharSequence content) {
+        add(Level.WARN, content, null);
+    }
+
+    @Override
+    public void warn(final CharSequence content, final Throwable error) {
+        add(Level.WARN, content, error);
+    }
+
+    @Override
+    public void warn(final Throwable error) {
+        add(Level.WARN, null, error);
+    }
+
+    @Override
+    public boolean isErrorEnabled() {
+        return log.isErrorEnabled();
+    }
+
+    @Override
+    public void error(final CharSequence content) {
+        add(Level.ERROR, content, null);
+    }
+
+    @Override
+    public void error(final CharSequence content, final Throwable error) {
+        add(Level.ERROR, content, error);
+    }
+
+    @Override
+    public void error(final Throwable error) {
+        add(Level.ERROR, null, error);
+    }
+
+    private static class Entry {
+        private final Level level;
+        private final CharSequence content;
+        private final Throwable error;
+
+        Entry(final Level level, final CharSequence content, final Throwable error) {
+            this.level = level;
+            this.content = content;
+            this.error = error;
+        }
+
+        void writeTo(final Log log) {
+            switch (level) {
+                case DEBUG:
+                    if (error == null) {
+                        log.debug(content);
+                    } else if (content == null) {
+                        log.debug(error);
+                    } else {
+                        log.debug(content, error);
+                    }
+                    break;
+                case INFO:
+                    if (error == null) {
+                        log.info(content);
+                    } else if (content == null) {
+                        log.info(error);
+                    } else {
+                        log.info(content, error);
+                    }
+                    break;
+                case WARN:
+                    if (error == null) {
+                        log.warn(content);
+                    } else if (content == null) {
+                        log.warn(error);
+                    } else {
+                        log.warn(content, error);
+                    }
+                    break;
+                default:
+                    if (error == null) {
+                        log.error(content);
+                    } else if (content == null) {
+                        log.error(error);
+                    } else {
+                        log.error(content, error);
+                    }
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Accumulates a SHA-256 fingerprint over a set of named build inputs. Two fingerprints are equal only if the same inputs
+ * were added with the same values and file contents, in the same order.
+ */
+public class InputFingerprint {
+    private final MessageDigest digest;
+
+    public InputFingerprint() {
+        this.digest = createDigest();
+    }
+
+    /**
+     * Adds a named value to the fingerprint.
+     *
+     * @param name the name of the input
+     * @param value the value of the input, may be <code>null</code>
+     * @return this fingerprint
+     */
+    public InputFingerprint add(final String name, final Object value) {
+        update(name + "=" + value + "\n");
+        return this;
+    }
+
+    /**
+     * Adds the content of a file to the fingerprint. A missing file is recorded as such. A directory, such as the classes directory
+     * that a module of the reactor resolves to, is added as by {@link #addDirectory(String, File, String)}.
+     *
+     * @param name the name of the input
+     * @param file the file or directory, may be <code>null</code>
+     * @return this fingerprint
+     * @throws IOException if the file cannot be read
+     */
+    public InputFingerprint addFile(final String name, final File file) throws IOException {
+        if (file != null && file.isDirectory()) {
+            return addDirectory(name, file, null);
+        }
+
+        if (file == null || !file.isFile()) {
+            return add(name, "<missing>");
+        }
+
+        return add(name, hash(file.toPath()));
+    }
+
+    /**
+     * Adds the relative path and content of every file in a directory tree to the fingerprint.
+     *
+     * @param name the name of the input
+     * @param directory the directory, may not exist
+     * @param excludedPath a path, relative to the directory and using '/' as the separator, whose contents are left out of the fingerprint
+     * @return this fingerprint
+     * @throws IOException if any of the files cannot be read
+     */
+    public InputFingerprint addDirectory(final String name, final File directory, final String excludedPath) throws IOException {
+        if (directory == null || !directory.isDirectory()) {
+            return add(name, "<missing>");
+        }
+
+        final Path root = directory.toPath();
+        final List<Path> files;
+        try (final Stream<Path> paths = Files.walk(root)) {
+            files = paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+
+        for (final Path file : files) {
+            final String relativePath = root.relativize(file).toString().replace(File.separatorChar, '/');
+            if (excludedPath != null && relativePath.startsWith(excludedPath)) {
+                continue;
+            }
+
+            add(name + ":" + relativePath, hash(file));
+        }
+
+        return this;
+    }
+
+    /**
+     * @return the hex encoded fingerprint. The fingerprint cannot be added to once this method has been called.
+     */
+    public String toHex() {
+        return toHex(digest.digest());
+    }
+
+    private void update(final String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String hash(final Path file) throws IOException {
+        final MessageDigest fileDigest = createDigest();
+        final byte[] buffer = new byte[65536];
+        try (final InputStream in = Files.newInputStream(file)) {
+            int len;
+            while ((len = in.read(buffer)) >= 0) {
+                fileDigest.update(buffer, 0, len);
+            }
+        }
+
+        return toHex(fileDigest.digest());
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported by this JVM", e);
+        }
+    }
+
+    private static String toHex(final byte[] bytes) {
+        final StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (final byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
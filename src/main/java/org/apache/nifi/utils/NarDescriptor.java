@@ -0,0 +1,338 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.utils;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.apache.maven.shared.dependency.graph.DependencyNode;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Describes what a NAR provides to the NARs that depend on it, which is its full dependency tree. The descriptor is attached to the NAR's build with the
+ * {@link #CLASSIFIER} classifier, so that builds of child NARs can read it instead of resolving the NAR's dependency graph again.
+ */
+public class NarDescriptor {
+    public static final String CLASSIFIER = "nar-descriptor";
+    public static final String EXTENSION = "xml";
+
+    private static final String FORMAT_VERSION = "1";
+
+    private final Node dependencyTree;
+
+    public NarDescriptor(final Node dependencyTree) {
+        this.dependencyTree = dependencyTree;
+    }
+
+    /**
+     * @return the dependency tree of the NAR, rooted at the NAR itself. NAR dependencies are always leaves of the tree.
+     */
+    public Node getDependencyTree() {
+        return dependencyTree;
+    }
+
+    /**
+     * Writes this descriptor to the given file.
+     *
+     * @param file the file to write to
+     * @throws IOException if the file cannot be written
+     */
+    public void write(final File file) throws IOException {
+        try (final OutputStream out = Files.newOutputStream(file.toPath())) {
+            final XMLStreamWriter xmlWriter = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+            try {
+                xmlWriter.writeStartDocument("UTF-8", "1.0");
+                xmlWriter.writeStartElement("narDescriptor");
+                xmlWriter.writeAttribute("formatVersion", FORMAT_VERSION);
+
+                xmlWriter.writeStartElement("dependencyTree");
+                writeNode(xmlWriter, dependencyTree);
+                xmlWriter.writeEndElement();
+
+                xmlWriter.writeEndElement();
+                xmlWriter.writeEndDocument();
+            } finally {
+                xmlWriter.close();
+            }
+        } catch (final XMLStreamException e) {
+            throw new IOException("Failed to write NAR descriptor " + file, e);
+        }
+    }
+
+    private void writeNode(final XMLStreamWriter xmlWriter, final Node node) throws XMLStreamException {
+        if (node.getChildren().isEmpty()) {
+            xmlWriter.writeEmptyElement("artifact");
+        } else {
+            xmlWriter.writeStartElement("artifact");
+        }
+
+        xmlWriter.writeAttribute("groupId", node.getGroupId());
+        xmlWriter.writeAttribute("artifactId", node.getArtifactId());
+        xmlWriter.writeAttribute("version", node.getVersion());
+        writeOptionalAttribute(xmlWriter, "type", node.getType());
+        writeOptionalAttribute(xmlWriter, "extension", node.getExtension());
+        writeOptionalAttribute(xmlWriter, "classifier", node.getClassifier());
+        writeOptionalAttribute(xmlWriter, "scope", node.getScope());
+        if (node.isOptional()) {
+            xmlWriter.writeAttribute("optional", "true");
+        }
+        writeOptionalAttribute(xmlWriter, "nodeString", node.getNodeString());
+
+        if (!node.getChildren().isEmpty()) {
+            for (final Node child : node.getChildren()) {
+                writeNode(xmlWriter, child);
+            }
+            xmlWriter.writeEndElement();
+        }
+    }
+
+    private void writeOptionalAttribute(final XMLStreamWriter xmlWriter, final String name, final String value) throws XMLStreamException {
+        if (value != null && !value.isEmpty()) {
+            xmlWriter.writeAttribute(name, value);
+        }
+    }
+
+    /**
+     * Reads a descriptor that was written by {@link #write(File)}.
+     *
+     * @param file the file to read
+     * @return the descriptor
+     * @throws IOException if the file cannot be read or is not a NAR descriptor
+     */
+    public static NarDescriptor read(final File file) throws IOException {
+        Node dependencyTree = null;
+
+        try (final InputStream in = Files.newInputStream(file.toPath())) {
+            final XMLStreamReader xmlReader = XMLInputFactory.newInstance().createXMLStreamReader(in);
+            try {
+                final Deque<Node> hierarchy = new ArrayDeque<>();
+
+                while (xmlReader.hasNext()) {
+                    final int event = xmlReader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        switch (xmlReader.getLocalName()) {
+                            case "narDescriptor":
+                                if (!FORMAT_VERSION.equals(xmlReader.getAttributeValue(null, "formatVersion"))) {
+                                    throw new IOException("Unsupported NAR descriptor format in " + file);
+                                }
+                                break;
+                            case "artifact":
+                                final Node node = readNode(xmlReader);
+                                if (hierarchy.isEmpty()) {
+                                    dependencyTree = node;
+                                } else {
+                                    hierarchy.peek().addChild(node);
+                                }
+                                hierarchy.push(node);
+                                break;
+                            default:
+                                break;
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT && "artifact".equals(xmlReader.getLocalName())) {
+                        hierarchy.pop();
+                    }
+                }
+            } finally {
+                xmlReader.close();
+            }
+        } catch (final XMLStreamException e) {
+            throw new IOException("Failed to read NAR descriptor " + file, e);
+        }
+
+        if (dependencyTree == null) {
+            throw new IOException("NAR descriptor " + file + " does not contain a dependency tree");
+        }
+
+        return new NarDescriptor(dependencyTree);
+    }
+
+    private static Node readNode(final XMLStreamReader xmlReader) {
+        return new Node(xmlReader.getAttributeValue(null, "groupId"), xmlReader.getAttributeValue(null, "artifactId"), xmlReader.getAttributeValue(null, "version"),
+            xmlReader.getAttributeValue(null, "type"), xmlReader.getAttributeValue(null, "extension"), xmlReader.getAttributeValue(null, "classifier"),
+            xmlReader.getAttributeValue(null, "scope"), "true".equals(xmlReader.getAttributeValue(null, "optional")), xmlReader.getAttributeValue(null, "nodeString"));
+    }
+
+    /**
+     * A single artifact in a dependency tree.
+     */
+    public static class Node {
+        private final String groupId;
+        private final String artifactId;
+        private final String version;
+        private final String type;
+        private final String extension;
+        private final String classifier;
+        private final String scope;
+        private final boolean optional;
+        private final String nodeString;
+        private final List<Node> children = new ArrayList<>();
+
+        public Node(final String groupId, final String artifactId, final String version, final String type, final String extension, final String classifier,
+                    final String scope, final boolean optional, final String nodeString) {
+            this.groupId = groupId;
+            this.artifactId = artifactId;
+            this.version = version;
+            this.type = type;
+            this.extension = extension;
+            this.classifier = classifier;
+            this.scope = scope;
+            this.optional = optional;
+            this.nodeString = nodeString;
+        }
+
+        /**
+         * Creates a node for the given artifact, without any children.
+         *
+         * @param artifact the artifact
+         * @param nodeString the text that describes the artifact in a dependency tree listing, may be <code>null</code>
+         * @return the node
+         */
+        public static Node fromArtifact(final Artifact artifact, final String nodeString) {
+            final String extension = artifact.getArtifactHandler() == null ? null : artifact.getArtifactHandler().getExtension();
+            return new Node(artifact.getGroupId(), artifact.getArtifactId(), artifact.getBaseVersion(), artifact.getType(), extension, artifact.getClassifier(),
+                artifact.getScope(), artifact.isOptional(), nodeString);
+        }
+
+        /**
+         * Converts a dependency graph into a tree of nodes.
+         *
+         * @param dependencyNode the root of the dependency graph
+         * @param expandNars whether the children of NAR dependencies should be included; if not, NAR dependencies are leaves
+         * @return the root of the tree
+         */
+        public static Node fromDependencyNode(final DependencyNode dependencyNode, final boolean expandNars) {
+            return fromDependencyNode(dependencyNode, expandNars, true);
+        }
+
+        private static Node fromDependencyNode(final DependencyNode dependencyNode, final boolean expandNars, final boolean root) {
+            final Node node = fromArtifact(dependencyNode.getArtifact(), dependencyNode.toNodeString());
+
+            if (root || expandNars || !node.isNar()) {
+                for (final DependencyNode child : dependencyNode.getChildren()) {
+                    node.addChild(fromDependencyNode(child, expandNars, false));
+                }
+            }
+
+            return node;
+        }
+
+        public String getGroupId() {
+            return groupId;
+        }
+
+        public String getArtifactId() {
+            return artifactId;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        public String getClassifier() {
+            return classifier;
+        }
+
+        public String getScope() {
+            return scope;
+        }
+
+        public boolean isOptional() {
+            return optional;
+        }
+
+        public boolean isNar() {
+            return NarDependencyUtils.NAR.equals(type);
+        }
+
+        /**
+         * @return the text that describes this node in a dependency tree listing
+         */
+        public String getNodeString() {
+            return nodeString == null ? toArtifact().toString() : nodeString;
+        }
+
+        public List<Node> getChildren() {
+            return children;
+        }
+
+        public void addChild(final Node child) {
+            children.add(child);
+        }
+
+        /**
+         * @return a new, unresolved artifact with the coordinates of this node
+         */
+        public Artifact toArtifact() {
+            final String artifactType = type == null ? "jar" : type;
+            final DefaultArtifactHandler handler = new DefaultArtifactHandler(artifactType);
+            if (extension != null) {
+                handler.setExtension(extension);
+            }
+
+            final Artifact artifact = new DefaultArtifact(groupId, artifactId, VersionRange.createFromVersion(version), scope, artifactType, classifier, handler);
+            artifact.setOptional(optional);
+            return artifact;
+        }
+
+        /**
+         * @return the artifacts of this node and of all of its descendants
+         */
+        public Set<Artifact> getAllArtifacts() {
+            final Set<Artifact> artifacts = new TreeSet<>();
+            addAllArtifacts(artifacts);
+            return artifacts;
+        }
+
+        private void addAllArtifacts(final Set<Artifact> artifacts) {
+            artifacts.add(toArtifact());
+            for (final Node child : children) {
+                child.addAllArtifacts(artifacts);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return groupId + ":" + artifactId + ":" + version;
+        }
+    }
+}
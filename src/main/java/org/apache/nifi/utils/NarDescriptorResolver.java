@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.utils;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.logging.Log;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.ArtifactResolutionException;
+import org.eclipse.aether.resolution.ArtifactResult;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Resolves the {@link NarDescriptor descriptors} that were published alongside NARs. NARs that were built by older versions of the
+ * plugin do not have a descriptor, in which case callers are expected to fall back to resolving the NAR's dependency graph. Descriptors
+ * are only used for the set of artifacts that a NAR bundles; they are not spliced into dependency trees, since Maven would not mediate
+ * conflicting versions and scopes across the spliced subtrees.
+ */
+public class NarDescriptorResolver {
+    private final RepositorySystem repositorySystem;
+    private final RepositorySystemSession repositorySession;
+    private final List<RemoteRepository> remoteRepositories;
+    private final Log log;
+
+    public NarDescriptorResolver(final RepositorySystem repositorySystem, final RepositorySystemSession repositorySession, final List<RemoteRepository> remoteRepositories,
+                                 final Log log) {
+        this.repositorySystem = repositorySystem;
+        this.repositorySession = repositorySession;
+        this.remoteRepositories = remoteRepositories == null ? Collections.emptyList() : remoteRepositories;
+        this.log = log;
+    }
+
+    /**
+     * Resolves the descriptor of the given NAR.
+     *
+     * @param narArtifact the NAR
+     * @return the descriptor, or <code>null</code> if the NAR does not have a descriptor or it cannot be read
+     */
+    public NarDescriptor resolve(final Artifact narArtifact) {
+        if (repositorySystem == null || repositorySession == null) {
+            return null;
+        }
+
+        final DefaultArtifact descriptorArtifact = new DefaultArtifact(narArtifact.getGroupId(), narArtifact.getArtifactId(), NarDescriptor.CLASSIFIER,
+            NarDescriptor.EXTENSION, narArtifact.getBaseVersion());
+
+        final ArtifactResult result;
+        try {
+            result = repositorySystem.resolveArtifact(repositorySession, new ArtifactRequest(descriptorArtifact, remoteRepositories, null));
+        } catch (final ArtifactResolutionException e) {
+            log.debug("No NAR descriptor is available for " + narArtifact + ", so its dependencies will be resolved instead");
+            return null;
+        }
+
+        try {
+            final NarDescriptor descriptor = NarDescriptor.read(result.getArtifact().getFile());
+            log.debug("Read NAR descriptor of " + narArtifact + " from " + result.getArtifact().getFile());
+            return descriptor;
+        } catch (final IOException e) {
+            log.warn("Unable to read the NAR descriptor of " + narArtifact + ", so its dependencies will be resolved instead", e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a list of independent tasks on a bounded pool of worker threads. Results are always returned in the order in which
+ * the tasks were given, regardless of the order in which they complete, and the first task to fail causes all outstanding
+ * tasks to be cancelled.
+ */
+public class ParallelTasks {
+
+    private static final long TERMINATION_TIMEOUT_SECONDS = 30;
+
+    private ParallelTasks() {
+    }
+
+    /**
+     * Determines the number of worker threads to use for a configured value.
+     *
+     * @param configuredThreads the configured number of threads
+     * @return the configured value, or the number of available processors if the configured value is less than 1
+     */
+    public static int getThreadCount(final int configuredThreads) {
+        if (configuredThreads < 1) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+
+        return configuredThreads;
+    }
+
+    /**
+     * Invokes all of the given tasks using at most the given number of threads. If only a single thread is requested, or there is
+     * at most one task, the tasks are run sequentially on the calling thread.
+     *
+     * @param tasks the tasks to run
+     * @param threads the maximum number of worker threads to use
+     * @param threadNamePrefix the prefix used for naming worker threads
+     * @param <T> the type of result produced by each task
+     * @return the results of the tasks, in the same order as the given tasks
+     * @throws Exception the exception thrown by the first task to fail
+     */
+    public static <T> List<T> invokeAll(final List<? extends Callable<T>> tasks, final int threads, final String threadNamePrefix) throws Exception {
+        final List<T> results = new ArrayList<>(tasks.size());
+
+        if (threads <= 1 || tasks.size() <= 1) {
+            for (final Callable<T> task : tasks) {
+                results.add(task.call());
+            }
+            return results;
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, tasks.size()), new NamedThreadFactory(threadNamePrefix));
+        try {
+            final CompletionService<T> completionService = new ExecutorCompletionService<>(executor);
+            final List<Future<T>> futures = new ArrayList<>(tasks.size());
+            for (final Callable<T> task : tasks) {
+                futures.add(completionService.submit(task));
+            }
+
+            // wait for completions in whatever order they occur so that a failure is seen as soon as it happens
+            for (int i = 0; i < futures.size(); i++) {
+                final Future<T> completed = completionService.take();
+                try {
+                    completed.get();
+                } catch (final ExecutionException e) {
+                    for (final Future<T> future : futures) {
+                        future.cancel(true);
+                    }
+
+                    throw unwrap(e);
+                }
+            }
+
+            for (final Future<T> future : futures) {
+                results.add(future.get());
+            }
+
+            return results;
+        } finally {
+            executor.shutdownNow();
+            awaitTermination(executor);
+        }
+    }
+
+    /**
+     * Waits for cancelled tasks to stop, so that none of them is still writing files or logging once the tasks are considered complete.
+     * Tasks that ignore interruption, such as those blocked in file I/O, are given a bounded amount of time to finish.
+     */
+    private static void awaitTermination(final ExecutorService executor) {
+        try {
+            executor.awaitTermination(TERMINATION_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Exception unwrap(final ExecutionException e) {
+        final Throwable cause = e.getCause();
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        if (cause instanceof Exception) {
+            return (Exception) cause;
+        }
+
+        return e;
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadCounter = new AtomicInteger(0);
+        private final String threadNamePrefix;
+
+        NamedThreadFactory(final String threadNamePrefix) {
+            this.threadNamePrefix = threadNamePrefix;
+        }
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, threadNamePrefix + "-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
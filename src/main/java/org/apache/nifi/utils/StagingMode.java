@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.utils;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.codehaus.plexus.util.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The ways in which a bundled dependency can be placed into the NAR staging directory. The linking modes fall back to
+ * copying the file when the file system is unable to create the requested kind of link.
+ */
+public enum StagingMode {
+
+    /**
+     * Copies the dependency byte for byte.
+     */
+    COPY("copy") {
+        @Override
+        protected boolean link(final Path source, final Path target) {
+            return false;
+        }
+    },
+
+    /**
+     * Creates a hard link to the dependency. Requires the staging directory and the local repository to be on the same file system.
+     */
+    HARDLINK("hardlink") {
+        @Override
+        protected boolean link(final Path source, final Path target) throws IOException {
+            Files.createLink(target, source);
+            return true;
+        }
+    },
+
+    /**
+     * Creates a copy-on-write clone of the dependency on file systems that support it, such as btrfs, XFS or APFS.
+     */
+    REFLINK("reflink") {
+        @Override
+        protected boolean link(final Path source, final Path target) throws IOException {
+            final String osName = System.getProperty("os.name", "").toLowerCase(Locale.ROOT);
+
+            final List<String> command;
+            if (osName.contains("linux")) {
+                command = Arrays.asList("cp", "--reflink=always", source.toString(), target.toString());
+            } else if (osName.contains("mac")) {
+                command = Arrays.asList("cp", "-c", source.toString(), target.toString());
+            } else {
+                return false;
+            }
+
+            final Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            try (final InputStream in = process.getInputStream()) {
+                final byte[] buffer = new byte[1024];
+                while (in.read(buffer) >= 0) {
+                    // discard output so the process cannot block on a full pipe
+                }
+            }
+
+            try {
+                return process.waitFor() == 0;
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while cloning " + source + " to " + target, e);
+            }
+        }
+    },
+
+    /**
+     * Creates a symbolic link to the dependency. The link target is read when the NAR is assembled.
+     */
+    SYMLINK_THEN_ARCHIVE("symlink-then-archive") {
+        @Override
+        protected boolean link(final Path source, final Path target) throws IOException {
+            Files.createSymbolicLink(target, source.toAbsolutePath());
+            return true;
+        }
+    },
+
+    /**
+     * Does not stage the dependency at all. The dependency is added to the NAR straight from the local repository.
+     */
+    DIRECT("direct") {
+        @Override
+        protected boolean link(final Path source, final Path target) {
+            return false;
+        }
+    };
+
+    private final String value;
+
+    StagingMode(final String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * Attempts to create the link for this mode.
+     *
+     * @param source the file to link to
+     * @param target the link to create, which does not exist
+     * @return <code>true</code> if the link was created, <code>false</code> if the file must be copied instead
+     * @throws IOException if the link could not be created
+     */
+    protected abstract boolean link(Path source, Path target) throws IOException;
+
+    /**
+     * Places the source file at the target location, replacing any existing file.
+     *
+     * @param source the dependency to stage
+     * @param target the location in the staging directory
+     * @return <code>true</code> if the file was staged using this mode, <code>false</code> if it had to be copied instead
+     * @throws IOException if the file could not be staged
+     */
+    public boolean stage(final File source, final File target) throws IOException {
+        final Path targetPath = target.toPath();
+        Files.createDirectories(targetPath.getParent());
+
+        // always remove the existing file first: writing into a link left over from a previous build would write into the local repository
+        Files.deleteIfExists(targetPath);
+
+        if (this != COPY) {
+            try {
+                if (link(source.toPath(), targetPath)) {
+                    return true;
+                }
+            } catch (final IOException | UnsupportedOperationException | SecurityException e) {
+                Files.deleteIfExists(targetPath);
+            }
+        }
+
+        FileUtils.copyFile(source, target);
+        return this == COPY;
+    }
+
+    /**
+     * Returns the mode for the given configuration value.
+     *
+     * @param value the configured value
+     * @return the matching mode
+     * @throws MojoExecutionException if the value does not name a staging mode
+     */
+    public static StagingMode fromValue(final String value) throws MojoExecutionException {
+        for (final StagingMode mode : values()) {
+            if (mode.getValue().equalsIgnoreCase(value)) {
+                return mode;
+            }
+        }
+
+        throw new MojoExecutionException("The specified staging mode [" + value + "] is invalid. Supported options are " + Arrays.toString(values()) + ".");
+    }
+
+    @Override
+    public String toString() {
+        return value;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.extension.definition.extraction;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.RandomAccess;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ClassFileHierarchyTest {
+
+    @Test
+    public void testReadSuperclassAndInterfaces() throws IOException {
+        final ClassFileHierarchy.ClassFile classFile = readClassFile(SampleList.class);
+
+        assertEquals(AbstractList.class.getName(), classFile.getSuperclassName());
+        assertEquals(Arrays.asList(RandomAccess.class.getName(), Serializable.class.getName(), SampleInterface.class.getName()), classFile.getInterfaces());
+    }
+
+    @Test
+    public void testReadClassWithWideConstants() throws IOException {
+        // long and double constants take up two entries of the constant pool
+        final ClassFileHierarchy.ClassFile classFile = readClassFile(WideConstants.class);
+
+        assertEquals(Object.class.getName(), classFile.getSuperclassName());
+        assertEquals(Collections.singletonList(Runnable.class.getName()), classFile.getInterfaces());
+    }
+
+    @Test
+    public void testReadInterface() throws IOException {
+        final ClassFileHierarchy.ClassFile classFile = readClassFile(SampleInterface.class);
+
+        assertEquals(Object.class.getName(), classFile.getSuperclassName());
+        assertEquals(Collections.singletonList(Runnable.class.getName()), classFile.getInterfaces());
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadNotAClassFile() throws IOException {
+        ClassFileHierarchy.ClassFile.read(new ByteArrayInputStream(new byte[] {0x50, 0x4B, 0x03, 0x04, 0, 0, 0, 0}));
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadTruncatedClassFile() throws IOException {
+        final byte[] bytes = readBytes(SampleList.class);
+        ClassFileHierarchy.ClassFile.read(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length / 2)));
+    }
+
+    @Test
+    public void testInterfaceHierarchy() throws IOException {
+        final ClassFileHierarchy hierarchy = new ClassFileHierarchy(getClass().getClassLoader());
+
+        assertTrue(hierarchy.isAssignableTo(SampleInterface.class.getName(), Runnable.class.getName()));
+        assertFalse(hierarchy.isAssignableTo(SampleInterface.class.getName(), Serializable.class.getName()));
+        assertNull(hierarchy.getClassFile("org.apache.nifi.DoesNotExist"));
+    }
+
+    private static ClassFileHierarchy.ClassFile readClassFile(final Class<?> type) throws IOException {
+        return ClassFileHierarchy.ClassFile.read(new ByteArrayInputStream(readBytes(type)));
+    }
+
+    private static byte[] readBytes(final Class<?> type) throws IOException {
+        final String resourceName = type.getName().replace('.', '/') + ".class";
+        try (final InputStream in = type.getClassLoader().getResourceAsStream(resourceName)) {
+            final byte[] buffer = new byte[65536];
+            int length = 0;
+            int read;
+            while ((read = in.read(buffer, length, buffer.length - length)) > 0) {
+                length += read;
+            }
+            return Arrays.copyOf(buffer, length);
+        }
+    }
+
+    private interface SampleInterface extends Runnable {
+    }
+
+    private abstract static class SampleList extends AbstractList<String> implements RandomAccess, Serializable, SampleInterface {
+    }
+
+    private static class WideConstants implements Runnable {
+        private static final long LONG_CONSTANT = 1234567890123L;
+        private static final double DOUBLE_CONSTANT = 3.14159;
+        private static final String STRING_CONSTANT = "constant";
+
+        @Override
+        public void run() {
+            System.out.println(LONG_CONSTANT + DOUBLE_CONSTANT + STRING_CONSTANT);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.extension.definition.extraction;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ExtensionClassLoaderPoolTest {
+
+    @Test
+    public void testClassLoaderIsSharedAndClosedOnLastRelease() throws MojoExecutionException {
+        final ExtensionClassLoaderPool pool = new ExtensionClassLoaderPool();
+        final AtomicInteger created = new AtomicInteger();
+        final ExtensionClassLoaderPool.ClassLoaderCreator creator = () -> {
+            created.incrementAndGet();
+            return new TrackingClassLoader();
+        };
+
+        final TrackingClassLoader first = (TrackingClassLoader) pool.acquire(null, Collections.<Artifact>emptyList(), null, creator);
+        final TrackingClassLoader second = (TrackingClassLoader) pool.acquire(null, Collections.<Artifact>emptyList(), null, creator);
+        assertSame(first, second);
+        assertEquals(1, created.get());
+
+        pool.release(first);
+        assertFalse(first.closed);
+        pool.release(second);
+        assertTrue(first.closed);
+
+        // a released ClassLoader is not kept, so the next acquirer creates a new one
+        final TrackingClassLoader third = (TrackingClassLoader) pool.acquire(null, Collections.<Artifact>emptyList(), null, creator);
+        assertEquals(2, created.get());
+        pool.release(third);
+        assertTrue(third.closed);
+    }
+
+    @Test
+    public void testWaitingAcquirerFailsWhenCreationFails() throws Exception {
+        final ExtensionClassLoaderPool pool = new ExtensionClassLoaderPool();
+        final CountDownLatch creating = new CountDownLatch(1);
+        final CountDownLatch failCreation = new CountDownLatch(1);
+        final MojoExecutionException creationFailure = new MojoExecutionException("creation failed");
+
+        final AtomicReference<Throwable> creatorResult = new AtomicReference<>();
+        final Thread creatorThread = new Thread(() -> {
+            try {
+                pool.acquire(null, Collections.<Artifact>emptyList(), null, () -> {
+                    creating.countDown();
+                    try {
+                        failCreation.await();
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    throw creationFailure;
+                });
+            } catch (final Throwable t) {
+                creatorResult.set(t);
+            }
+        });
+        creatorThread.start();
+        assertTrue(creating.await(10, TimeUnit.SECONDS));
+
+        final AtomicReference<Throwable> waiterResult = new AtomicReference<>();
+        final Thread waiterThread = new Thread(() -> {
+            try {
+                pool.acquire(null, Collections.<Artifact>emptyList(), null, () -> {
+                    throw new AssertionError("The ClassLoader is already being created");
+                });
+            } catch (final Throwable t) {
+                waiterResult.set(t);
+            }
+        });
+        waiterThread.start();
+
+        // let the creator fail only once the second acquirer is waiting for it
+        final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (waiterThread.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        failCreation.countDown();
+        creatorThread.join(TimeUnit.SECONDS.toMillis(10));
+        waiterThread.join(TimeUnit.SECONDS.toMillis(10));
+
+        assertSame(creationFailure, creatorResult.get());
+        if (!(waiterResult.get() instanceof MojoExecutionException)) {
+            fail("Expected a MojoExecutionException but got " + waiterResult.get());
+        }
+        assertSame(creationFailure, waiterResult.get().getCause());
+
+        // the failed entry is gone, so the ClassLoader can still be created and is closed once released
+        final TrackingClassLoader classLoader = (TrackingClassLoader) pool.acquire(null, Collections.<Artifact>emptyList(), null, TrackingClassLoader::new);
+        pool.release(classLoader);
+        assertTrue(classLoader.closed);
+    }
+
+    private static class TrackingClassLoader extends ExtensionClassLoader {
+        private volatile boolean closed;
+
+        TrackingClassLoader() {
+            super(new URL[0], null, null, Collections.<Artifact>emptyList());
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            super.close();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.extension.definition.extraction;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class IndexedExtensionClassLoaderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testSplitPackageSearchedInUrlOrder() throws IOException {
+        final URL first = createJar("first.jar", "first", "com/example/First.class", "com/example/shared.txt").toURI().toURL();
+        final URL second = createJar("second.jar", "second", "com/example/Second.class", "com/example/shared.txt").toURI().toURL();
+
+        try (final IndexedExtensionClassLoader classLoader = createClassLoader(first, second)) {
+            assertEquals(Collections.singletonMap("com.example", Arrays.asList(first, second)), classLoader.getSplitPackages());
+            assertEquals("first", read(classLoader.getResource("com/example/shared.txt")));
+            assertEquals(Arrays.asList("first", "second"), readAll(classLoader.getResources("com/example/shared.txt")));
+        }
+
+        try (final IndexedExtensionClassLoader classLoader = createClassLoader(second, first)) {
+            assertEquals(Collections.singletonMap("com.example", Arrays.asList(second, first)), classLoader.getSplitPackages());
+            assertEquals("second", read(classLoader.getResource("com/example/shared.txt")));
+            assertEquals(Arrays.asList("second", "first"), readAll(classLoader.getResources("com/example/shared.txt")));
+        }
+    }
+
+    @Test
+    public void testPackagesWithoutClassesAreNotSplit() throws IOException {
+        final URL first = createJar("first.jar", "first", "com/example/First.class", "META-INF/shared.txt").toURI().toURL();
+        final URL second = createJar("second.jar", "second", "org/example/Second.class", "META-INF/shared.txt").toURI().toURL();
+
+        try (final IndexedExtensionClassLoader classLoader = createClassLoader(first, second)) {
+            assertTrue(classLoader.getSplitPackages().isEmpty());
+            assertEquals(Arrays.asList("first", "second"), readAll(classLoader.getResources("META-INF/shared.txt")));
+            assertNull(classLoader.getResource("com/example/missing.txt"));
+        }
+    }
+
+    @Test
+    public void testResourceUrlsAreEncodedLikeUrlClassLoader() throws IOException {
+        final String resourceName = "dir x/a#b%c\u00e9.txt";
+        final URL jar = createJar("with space.jar", "content", resourceName).toURI().toURL();
+
+        try (final IndexedExtensionClassLoader classLoader = createClassLoader(jar);
+             final URLClassLoader urlClassLoader = new URLClassLoader(new URL[] {jar}, null)) {
+            final URL resource = classLoader.getResource(resourceName);
+            assertNotNull(resource);
+            assertEquals("content", read(resource));
+            assertEquals(urlClassLoader.getResource(resourceName), resource);
+        }
+    }
+
+    private IndexedExtensionClassLoader createClassLoader(final URL... urls) throws IOException {
+        return new IndexedExtensionClassLoader(urls, null, Collections.emptyList());
+    }
+
+    private File createJar(final String name, final String content, final String... entryNames) throws IOException {
+        final File jarFile = new File(temporaryFolder.getRoot(), name);
+        try (final OutputStream out = Files.newOutputStream(jarFile.toPath());
+             final JarOutputStream jarOut = new JarOutputStream(out)) {
+            for (final String entryName : entryNames) {
+                jarOut.putNextEntry(new JarEntry(entryName));
+                jarOut.write(content.getBytes(StandardCharsets.UTF_8));
+                jarOut.closeEntry();
+            }
+        }
+        return jarFile;
+    }
+
+    private static List<String> readAll(final Enumeration<URL> resources) throws IOException {
+        final List<String> contents = new ArrayList<>();
+        while (resources.hasMoreElements()) {
+            contents.add(read(resources.nextElement()));
+        }
+        return contents;
+    }
+
+    private static String read(final URL resource) throws IOException {
+        assertNotNull(resource);
+        try (final InputStream in = resource.openStream()) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[1024];
+            int len;
+            while ((len = in.read(buffer)) > 0) {
+                out.write(buffer, 0, len);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
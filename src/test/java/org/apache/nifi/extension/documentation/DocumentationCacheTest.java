@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.extension.documentation;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DocumentationCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testStoreAndRestore() throws IOException {
+        final DocumentationCache cache = new DocumentationCache(temporaryFolder.newFolder("cache"));
+        final File docsDirectory = temporaryFolder.newFolder("docs");
+        write(new File(docsDirectory, "extension-manifest.xml"), "<extensionManifest/>");
+        write(new File(docsDirectory, "additional-details/org.example.Processor/additionalDetails.html"), "details");
+
+        assertFalse(cache.restore("key", docsDirectory));
+        cache.store("key", docsDirectory);
+
+        final File restoredDirectory = new File(temporaryFolder.getRoot(), "restored");
+        assertFalse(cache.restore("other-key", restoredDirectory));
+        assertTrue(cache.restore("key", restoredDirectory));
+
+        assertEquals("<extensionManifest/>", read(new File(restoredDirectory, "extension-manifest.xml")));
+        assertEquals("details", read(new File(restoredDirectory, "additional-details/org.example.Processor/additionalDetails.html")));
+    }
+
+    private static void write(final File file, final String content) throws IOException {
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(final File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.extension.documentation;
+
+import org.apache.nifi.extension.definition.ExtensionType;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ExtensionCostReportTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testSpecialCharactersAreEscaped() throws IOException {
+        final ExtensionCostReport report = new ExtensionCostReport();
+        report.add(new ExtensionCostReport.ExtensionCost(ExtensionType.PROCESSOR, "org.example.\"Quoted\"\\Back\nslash\t\u0001", 0, 0, 0, 0, 0));
+
+        final String json = write(report, "org.example:\"nar\":1.0", 0);
+
+        assertTrue(json, json.contains("\"nar\": \"org.example:\\\"nar\\\":1.0\","));
+        assertTrue(json, json.contains("\"name\": \"org.example.\\\"Quoted\\\"\\\\Back\\nslash\\t\\u0001\","));
+        assertFalse(json, json.contains("\u0001"));
+        assertFalse(json, json.contains("Back\nslash"));
+    }
+
+    @Test
+    public void testCostsAreWrittenInMillis() throws IOException {
+        final ExtensionCostReport report = new ExtensionCostReport();
+        report.add(new ExtensionCostReport.ExtensionCost(ExtensionType.CONTROLLER_SERVICE, "org.example.Service", 1_500_000, 250_000, 1_000, 0, 42));
+
+        final String json = write(report, null, 5);
+
+        assertTrue(json, json.contains("\"nar\": null,"));
+        assertTrue(json, json.contains("\"thresholdMillis\": 5,"));
+        assertTrue(json, json.contains("\"type\": \"CONTROLLER_SERVICE\","));
+        assertTrue(json, json.contains("\"classLoadMillis\": 1.500,"));
+        assertTrue(json, json.contains("\"staticInitMillis\": 0.250,"));
+        assertTrue(json, json.contains("\"constructMillis\": 0.001,"));
+        assertTrue(json, json.contains("\"totalMillis\": 1.751,"));
+        assertTrue(json, json.contains("\"classesLoaded\": 42\n"));
+    }
+
+    @Test
+    public void testEmptyReport() throws IOException {
+        final String json = write(new ExtensionCostReport(), "org.example:nar:1.0", 0);
+
+        assertTrue(json, json.contains("\"extensions\": []\n"));
+    }
+
+    @Test
+    public void testCostsAreOrderedAndFilteredByThreshold() {
+        final ExtensionCostReport report = new ExtensionCostReport();
+        report.add(new ExtensionCostReport.ExtensionCost(ExtensionType.REPORTING_TASK, "org.example.Task", 0, 0, TimeUnit.MILLISECONDS.toNanos(20), 0, 0));
+        report.add(new ExtensionCostReport.ExtensionCost(ExtensionType.PROCESSOR, "org.example.Slow", TimeUnit.MILLISECONDS.toNanos(11), 0, 0, 0, 0));
+        report.add(new ExtensionCostReport.ExtensionCost(ExtensionType.PROCESSOR, "org.example.Fast", 0, 0, 0, TimeUnit.MILLISECONDS.toNanos(10), 0));
+
+        final List<ExtensionCostReport.ExtensionCost> costs = report.getExtensionCosts();
+        assertEquals("org.example.Fast", costs.get(0).getExtensionName());
+        assertEquals("org.example.Slow", costs.get(1).getExtensionName());
+        assertEquals("org.example.Task", costs.get(2).getExtensionName());
+
+        final List<ExtensionCostReport.ExtensionCost> exceeding = report.getExtensionCostsExceeding(10);
+        assertEquals(2, exceeding.size());
+        assertEquals("org.example.Slow", exceeding.get(0).getExtensionName());
+        assertEquals("org.example.Task", exceeding.get(1).getExtensionName());
+    }
+
+    private String write(final ExtensionCostReport report, final String nar, final long thresholdMillis) throws IOException {
+        final File file = temporaryFolder.newFile("costs.json");
+        report.write(file, nar, thresholdMillis);
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
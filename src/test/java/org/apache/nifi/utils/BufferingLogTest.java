@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.utils;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BufferingLogTest {
+
+    @Test
+    public void testFlushWritesMessagesInOrder() {
+        final RecordingLog log = new RecordingLog();
+        final BufferingLog first = new BufferingLog(log);
+        final BufferingLog second = new BufferingLog(log);
+
+        second.info("second task");
+        first.info("first task");
+        first.warn("first task warning");
+        second.error("second task error");
+        assertTrue(log.messages.isEmpty());
+
+        first.flush();
+        second.flush();
+        assertEquals(Arrays.asList("INFO first task", "WARN first task warning", "INFO second task", "ERROR second task error"), log.messages);
+
+        // a flushed buffer is empty, so flushing it again writes nothing
+        first.flush();
+        assertEquals(4, log.messages.size());
+    }
+
+    private static class RecordingLog extends SystemStreamLog {
+        private final List<String> messages = new ArrayList<>();
+
+        @Override
+        public void info(final CharSequence content) {
+            messages.add("INFO " + content);
+        }
+
+        @Override
+        public void warn(final CharSequence content) {
+            messages.add("WARN " + content);
+        }
+
+        @Override
+        public void error(final CharSequence content) {
+            messages.add("ERROR " + content);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.utils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class InputFingerprintTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testSameInputsGiveSameFingerprint() {
+        assertEquals(new InputFingerprint().add("a", 1).add("b", null).toHex(), new InputFingerprint().add("a", 1).add("b", null).toHex());
+    }
+
+    @Test
+    public void testValuesAndOrderAreSignificant() {
+        final String fingerprint = new InputFingerprint().add("a", 1).add("b", 2).toHex();
+
+        assertNotEquals(fingerprint, new InputFingerprint().add("a", 1).add("b", 3).toHex());
+        assertNotEquals(fingerprint, new InputFingerprint().add("b", 2).add("a", 1).toHex());
+        assertNotEquals(fingerprint, new InputFingerprint().add("a", 1).toHex());
+    }
+
+    @Test
+    public void testFileContent() throws IOException {
+        final File file = temporaryFolder.newFile("input.txt");
+        write(file, "one");
+        final String first = new InputFingerprint().addFile("input", file).toHex();
+        assertEquals(first, new InputFingerprint().addFile("input", file).toHex());
+
+        write(file, "two");
+        assertNotEquals(first, new InputFingerprint().addFile("input", file).toHex());
+    }
+
+    @Test
+    public void testMissingFile() throws IOException {
+        final File missing = new File(temporaryFolder.getRoot(), "missing.txt");
+
+        assertEquals(new InputFingerprint().add("input", "<missing>").toHex(), new InputFingerprint().addFile("input", missing).toHex());
+        assertEquals(new InputFingerprint().add("input", "<missing>").toHex(), new InputFingerprint().addDirectory("input", missing, null).toHex());
+    }
+
+    @Test
+    public void testDirectoryExcludesPath() throws IOException {
+        final File directory = temporaryFolder.newFolder("classes");
+        write(new File(directory, "Example.class"), "class");
+        final File excludedDirectory = new File(directory, "META-INF/bundled-dependencies");
+        excludedDirectory.mkdirs();
+        final File excludedFile = new File(excludedDirectory, "dependency.jar");
+        write(excludedFile, "jar");
+
+        final String fingerprint = new InputFingerprint().addDirectory("classes", directory, "META-INF/bundled-dependencies/").toHex();
+
+        write(excludedFile, "changed jar");
+        assertEquals(fingerprint, new InputFingerprint().addDirectory("classes", directory, "META-INF/bundled-dependencies/").toHex());
+        assertNotEquals(fingerprint, new InputFingerprint().addDirectory("classes", directory, null).toHex());
+
+        write(new File(directory, "Example.class"), "changed class");
+        assertNotEquals(fingerprint, new InputFingerprint().addDirectory("classes", directory, "META-INF/bundled-dependencies/").toHex());
+    }
+
+    @Test
+    public void testDirectoryRelativePathsAreSignificant() throws IOException {
+        final File first = temporaryFolder.newFolder("first");
+        write(new File(first, "a.txt"), "content");
+        final File second = temporaryFolder.newFolder("second");
+        write(new File(second, "b.txt"), "content");
+
+        assertNotEquals(new InputFingerprint().addDirectory("dir", first, null).toHex(), new InputFingerprint().addDirectory("dir", second, null).toHex());
+    }
+
+    @Test
+    public void testDirectoryFile() throws IOException {
+        // a dependency on a module of the reactor resolves to its classes directory rather than a jar
+        final File directory = temporaryFolder.newFolder("target-classes");
+        final File classFile = new File(directory, "Example.class");
+        write(classFile, "class");
+
+        final String fingerprint = new InputFingerprint().addFile("dependency", directory).toHex();
+        assertEquals(new InputFingerprint().addDirectory("dependency", directory, null).toHex(), fingerprint);
+        assertNotEquals(new InputFingerprint().add("dependency", "<missing>").toHex(), fingerprint);
+
+        write(classFile, "changed class");
+        assertNotEquals(fingerprint, new InputFingerprint().addFile("dependency", directory).toHex());
+    }
+
+    private static void write(final File file, final String content) throws IOException {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.utils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+
+public class NarDescriptorTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        final NarDescriptor.Node root = new NarDescriptor.Node("org.example", "example-nar", "1.0.0-SNAPSHOT", "nar", "nar", null, null, false, null);
+        final NarDescriptor.Node library = new NarDescriptor.Node("org.example", "example-lib", "1.0.0-SNAPSHOT", "jar", "jar", null, "compile", false,
+            "org.example:example-lib:jar:1.0.0-SNAPSHOT:compile");
+        library.addChild(new NarDescriptor.Node("org.example", "example-native", "2.1", "jar", "jar", "linux-x86_64", "runtime", true, null));
+        root.addChild(library);
+        root.addChild(new NarDescriptor.Node("org.apache.nifi", "nifi-standard-services-api-nar", "1.20.0", "nar", "nar", null, "compile", false, null));
+
+        final File file = temporaryFolder.newFile("descriptor.xml");
+        new NarDescriptor(root).write(file);
+        final NarDescriptor read = NarDescriptor.read(file);
+
+        assertNode(root, read.getDependencyTree());
+        assertEquals(root.getAllArtifacts(), read.getDependencyTree().getAllArtifacts());
+    }
+
+    @Test
+    public void testRoundTripWithoutDependencies() throws IOException {
+        final NarDescriptor.Node root = new NarDescriptor.Node("org.example", "example-nar", "1.0.0", "nar", "nar", null, null, false, null);
+
+        final File file = temporaryFolder.newFile("descriptor.xml");
+        new NarDescriptor(root).write(file);
+        final NarDescriptor read = NarDescriptor.read(file);
+
+        assertNode(root, read.getDependencyTree());
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadNotADescriptor() throws IOException {
+        final File file = temporaryFolder.newFile("not-a-descriptor.xml");
+        Files.write(file.toPath(), "<project/>".getBytes(StandardCharsets.UTF_8));
+
+        NarDescriptor.read(file);
+    }
+
+    private static void assertNode(final NarDescriptor.Node expected, final NarDescriptor.Node actual) {
+        assertEquals(expected.getGroupId(), actual.getGroupId());
+        assertEquals(expected.getArtifactId(), actual.getArtifactId());
+        assertEquals(expected.getVersion(), actual.getVersion());
+        assertEquals(expected.getType(), actual.getType());
+        assertEquals(expected.getExtension(), actual.getExtension());
+        assertEquals(expected.getClassifier(), actual.getClassifier());
+        assertEquals(expected.getScope(), actual.getScope());
+        assertEquals(expected.isOptional(), actual.isOptional());
+        assertEquals(expected.getNodeString(), actual.getNodeString());
+        assertEquals(expected.isNar(), actual.isNar());
+
+        assertEquals(expected.getChildren().size(), actual.getChildren().size());
+        for (int i = 0; i < expected.getChildren().size(); i++) {
+            assertNode(expected.getChildren().get(i), actual.getChildren().get(i));
+        }
+    }
+}